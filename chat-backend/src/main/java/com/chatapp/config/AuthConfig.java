@@ -0,0 +1,46 @@
+package com.chatapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.chatapp.service.TokenService;
+
+@Configuration
+public class AuthConfig implements WebMvcConfigurer {
+
+    private final TokenService tokenService;
+
+    public AuthConfig(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    // dedicated bcrypt pool: fixed size, bounded queue, rejects when full
+    @Bean
+    public ThreadPoolTaskExecutor authExecutor(
+            @Value("${app.auth.pool-size:2}") int poolSize,
+            @Value("${app.auth.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("auth-");
+        return executor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new AuthInterceptor(tokenService))
+                .addPathPatterns("/api/**")
+                .excludePathPatterns(
+                        "/api/login",
+                        "/api/register",
+                        "/api/forgot-password",
+                        "/api/reset-password",
+                        "/api/files/**" // loaded by <img>/<video> tags, which cannot send headers
+                );
+    }
+}
@@ -0,0 +1,57 @@
+package com.chatapp.config;
+
+import java.util.Optional;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import com.chatapp.service.TokenService;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Requires a valid bearer token on REST calls. The token's username is
+ * exposed as the "username" request attribute, and any "me"/"username"
+ * request parameter has to match it.
+ */
+public class AuthInterceptor implements HandlerInterceptor {
+
+    private static final String BEARER = "Bearer ";
+
+    private final TokenService tokenService;
+
+    public AuthInterceptor(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (CorsUtils.isPreFlightRequest(request)) return true;
+
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        Optional<String> username = header != null && header.startsWith(BEARER)
+                ? tokenService.verify(header.substring(BEARER.length()))
+                : Optional.empty();
+
+        if (username.isEmpty()) {
+            response.sendError(HttpStatus.UNAUTHORIZED.value(), "Missing or invalid token");
+            return false;
+        }
+
+        if (!matches(request.getParameter("me"), username.get()) ||
+            !matches(request.getParameter("username"), username.get())) {
+            response.sendError(HttpStatus.FORBIDDEN.value(), "Token does not belong to this user");
+            return false;
+        }
+
+        request.setAttribute("username", username.get());
+        return true;
+    }
+
+    private static boolean matches(String param, String username) {
+        return param == null || param.equals(username);
+    }
+}
@@ -0,0 +1,23 @@
+package com.chatapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class MediaConfig {
+
+    // thumbnail/preview pipeline: small fixed pool, bounded queue, rejects when full
+    @Bean
+    public ThreadPoolTaskExecutor mediaExecutor(
+            @Value("${app.media.pool-size:1}") int poolSize,
+            @Value("${app.media.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("media-");
+        return executor;
+    }
+}
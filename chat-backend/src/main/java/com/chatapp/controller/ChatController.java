@@ -1,23 +1,27 @@
 package com.chatapp.controller;
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+import org.bson.types.ObjectId;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -29,14 +33,18 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriUtils;
 
 import com.chatapp.model.Message;
 import com.chatapp.model.Room;
 import com.chatapp.model.User;
-import com.chatapp.repository.MessageRepository;
 import com.chatapp.repository.RoomRepository;
 import com.chatapp.repository.UserRepository;
+import com.chatapp.service.ChatService;
 import com.chatapp.service.EmailService;
+import com.chatapp.service.MediaPreviewService;
+import com.chatapp.service.PasswordService;
+import com.chatapp.service.TokenService;
 
 @RestController
 @RequestMapping("/api")
@@ -44,20 +52,28 @@ import com.chatapp.service.EmailService;
 public class ChatController {
 
     private final UserRepository userRepo;
-    private final MessageRepository messageRepo;
     private final RoomRepository roomRepo;
-    private final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
     private final EmailService emailService;
+    private final ChatService chatService;
+    private final PasswordService passwordService;
+    private final TokenService tokenService;
+    private final MediaPreviewService mediaPreviewService;
 
 
     public ChatController(UserRepository userRepo,
-                      MessageRepository messageRepo,
                       RoomRepository roomRepo,
-                      EmailService emailService) {
+                      EmailService emailService,
+                      ChatService chatService,
+                      PasswordService passwordService,
+                      TokenService tokenService,
+                      MediaPreviewService mediaPreviewService) {
     this.userRepo = userRepo;
-    this.messageRepo = messageRepo;
     this.roomRepo = roomRepo;
-    this.emailService = emailService;}
+    this.emailService = emailService;
+    this.chatService = chatService;
+    this.passwordService = passwordService;
+    this.tokenService = tokenService;
+    this.mediaPreviewService = mediaPreviewService;}
 
     private final Path uploadDir = Paths.get("uploads");
 
@@ -80,19 +96,49 @@ public class ChatController {
 public List<Message> history(
         @RequestParam(required = false) String roomId,
         @RequestParam(required = false) String me,
-        @RequestParam(required = false, name = "with") String withUser
+        @RequestParam(required = false, name = "with") String withUser,
+        @RequestParam(required = false) Integer limit,
+        @RequestParam(required = false) String before
 ) {
+    // ✅ older page (cursor = oldest message id the client has) -> hot tier, then archive
+    if (limit != null && limit > 0 && before != null) {
+        if (!ObjectId.isValid(before))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+
+        if (roomId != null && !roomId.isBlank()) {
+            return chatService.roomHistoryPage(roomId, me, before, limit);
+        }
+        if (withUser != null && "ALL".equalsIgnoreCase(withUser)) {
+            return chatService.broadcastHistoryPage(before, limit);
+        }
+        return chatService.conversationHistoryPage(me, withUser, before, limit);
+    }
+
+    // ✅ recent page only -> served from the in-memory ring when warm
+    if (limit != null && limit > 0) {
+        if (roomId != null && !roomId.isBlank()) {
+            return chatService.recentRoomHistory(roomId, me, limit);
+        }
+        if (withUser != null && "ALL".equalsIgnoreCase(withUser)) {
+            return chatService.recentBroadcast(limit);
+        }
+        if (me != null && withUser != null) {
+            return chatService.recentConversation(me, withUser, limit);
+        }
+    }
+
+    // full history, across hot and archived messages
     if (roomId != null && !roomId.isBlank()) {
-        return messageRepo.findRoomHistoryExcludingDeleted(roomId, me);
+        return chatService.roomHistory(roomId, me);
     }
     if (withUser != null && "ALL".equalsIgnoreCase(withUser)) {
-        return messageRepo.findBroadcast();
+        return chatService.broadcastHistory();
     }
-    return messageRepo.findConversationExcludingDeleted(me, withUser);
+    return chatService.conversationHistory(me, withUser);
 }
 
     @PostMapping("/login")
-public User login(@RequestBody User user) {
+public CompletableFuture<Map<String, Object>> login(@RequestBody User user) {
     if (user.getEmail() == null || user.getEmail().isBlank() ||
         user.getPassword() == null || user.getPassword().isBlank()) {
         throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Email and password required");
@@ -100,13 +146,25 @@ public User login(@RequestBody User user) {
 
     String email = user.getEmail().trim().toLowerCase();
 
-    return userRepo.findByEmail(email)
-            .filter(u -> encoder.matches(user.getPassword(), u.getPassword()))
+    User found = userRepo.findByEmail(email)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials"));
+
+    // ✅ bcrypt runs on the auth pool, request thread is released meanwhile
+    return passwordService.matches(user.getPassword(), found.getPassword())
+            .thenApply(ok -> {
+                if (!ok) throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials");
+
+                Map<String, Object> res = new HashMap<>();
+                res.put("id", found.getId());
+                res.put("username", found.getUsername());
+                res.put("email", found.getEmail());
+                res.put("token", tokenService.issue(found));
+                return res;
+            });
 }
 
 @PostMapping("/register")
-public User register(@RequestBody User user) {
+public CompletableFuture<User> register(@RequestBody User user) {
     if (user.getUsername() == null || user.getUsername().isBlank())
         throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Username required");
 
@@ -122,8 +180,11 @@ public User register(@RequestBody User user) {
     if (userRepo.existsByEmail(email))
         throw new ResponseStatusException(HttpStatus.CONFLICT, "Email already registered");
 
-    user.setPassword(encoder.encode(user.getPassword()));
-    return userRepo.save(user);
+    return passwordService.encode(user.getPassword())
+            .thenApply(hash -> {
+                user.setPassword(hash);
+                return userRepo.save(user);
+            });
 }
 
 @PostMapping("/forgot-password")
@@ -141,8 +202,8 @@ public String forgotPassword(@RequestBody User req) {
     user.setResetTokenExpiry(System.currentTimeMillis() + (15 * 60 * 1000));
     userRepo.save(user);
 
-    // ✅ SEND REAL EMAIL
-    emailService.sendResetEmail(email, token);
+    // ✅ queue email (sent in the background, SMTP latency/failures don't hit this request)
+    emailService.sendResetEmail(email, token, user.getResetTokenExpiry());
 
     // ✅ Never return token in response
     return "If the email exists, a reset token has been sent.";
@@ -150,7 +211,7 @@ public String forgotPassword(@RequestBody User req) {
 
 
 @PostMapping("/reset-password")
-public String resetPassword(@RequestBody User req) {
+public CompletableFuture<String> resetPassword(@RequestBody User req) {
     System.out.println("RESET PASSWORD HIT");
 
     if (req.getResetToken() == null || req.getResetToken().isBlank())
@@ -166,12 +227,15 @@ public String resetPassword(@RequestBody User req) {
         user.getResetTokenExpiry() < System.currentTimeMillis())
         throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Token expired");
 
-    user.setPassword(encoder.encode(req.getPassword()));
-    user.setResetToken(null);
-    user.setResetTokenExpiry(null);
+    return passwordService.encode(req.getPassword())
+            .thenApply(hash -> {
+                user.setPassword(hash);
+                user.setResetToken(null);
+                user.setResetTokenExpiry(null);
 
-    userRepo.save(user);
-    return "Password reset successful";
+                userRepo.save(user);
+                return "Password reset successful";
+            });
 }
 @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
 public Map<String, Object> upload(@RequestParam("file") MultipartFile file) throws IOException {
@@ -197,6 +261,13 @@ public Map<String, Object> upload(@RequestParam("file") MultipartFile file) thro
     res.put("fileName", original);
     res.put("fileType", file.getContentType());
     res.put("fileSize", file.getSize());
+
+    // ✅ images the JDK can decode get a thumbnail + preview generated in the background
+    if (mediaPreviewService.canPreview(target, file.getContentType())) {
+        mediaPreviewService.submit(storedName);
+        res.put("thumbnailUrl", fileUrl + "/thumb");
+        res.put("previewUrl", fileUrl + "/preview");
+    }
     return res;
 }
 @GetMapping("/files/{name}")
@@ -221,30 +292,41 @@ public ResponseEntity<Resource> getFile(@PathVariable String name) throws IOExce
             .body(resource);
 }
 
+@GetMapping("/files/{name}/{variant}")
+public ResponseEntity<Resource> getFileVariant(@PathVariable String name, @PathVariable String variant) throws IOException {
+    if (name.contains("..")) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+    }
+    MediaPreviewService.Variant v = MediaPreviewService.Variant.parse(variant).orElse(null);
+    if (v == null || !Files.exists(uploadDir.resolve(name).normalize())) {
+        return ResponseEntity.notFound().build();
+    }
+
+    Path variantPath = mediaPreviewService.find(name, v).orElse(null);
+    if (variantPath == null) {
+        // not generated (yet): queue it, unless it already failed for good (e.g. not an image),
+        // and let the client use the original meanwhile (not cached)
+        if (!mediaPreviewService.hasFailed(name)) mediaPreviewService.submit(name);
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .location(URI.create("/api/files/" + UriUtils.encodePathSegment(name, StandardCharsets.UTF_8)))
+                .build();
+    }
+
+    // variants never change (stored names are unique), so let browsers and CDNs keep them
+    return ResponseEntity.ok()
+            .contentType(variantPath.toString().endsWith(".png") ? MediaType.IMAGE_PNG : MediaType.IMAGE_JPEG)
+            .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+            .body(new UrlResource(variantPath.toUri()));
+}
+
 @PostMapping("/chat/delete")
 public void deleteChatForMe(
         @RequestParam String me,
         @RequestParam(required = false) String withUser,
         @RequestParam(required = false) String roomId
 ) {
-    List<Message> msgs;
-
-    if (roomId != null && !roomId.isBlank()) {
-        msgs = messageRepo.findByRoomId(roomId);
-    } else {
-        msgs = messageRepo.findConversation(me, withUser);
-    }
-
-    for (Message m : msgs) {
-        if (m.getDeletedFor() == null) {
-            m.setDeletedFor(new ArrayList<>());
-        }
-        if (!m.getDeletedFor().contains(me)) {
-            m.getDeletedFor().add(me);
-        }
-    }
-
-    messageRepo.saveAll(msgs);
+    // ✅ updated in place (hot + archived messages)
+    chatService.deleteFor(me, withUser, roomId);
 }
 @DeleteMapping("/user")
 public void deleteUser(@RequestParam String username) {
@@ -252,12 +334,8 @@ public void deleteUser(@RequestParam String username) {
     // 1. Remove user from users collection
     userRepo.deleteByUsername(username);
 
-    // 2. Anonymize messages sent by this user
-    List<Message> msgs = messageRepo.findBySender(username);
-    for (Message m : msgs) {
-        m.setSender("Deleted User");
-    }
-    messageRepo.saveAll(msgs);
+    // 2. Anonymize messages sent by this user (hot + archived)
+    chatService.renameSender(username, "Deleted User");
 
     // 3. Remove user from group rooms
     List<Room> rooms = roomRepo.findByMembersContaining(username);
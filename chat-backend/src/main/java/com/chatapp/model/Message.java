@@ -21,6 +21,8 @@ public class Message {
     private String fileName;
     private String fileType;  // mime type
     private Long fileSize;
+    private String thumbnailUrl;  // e.g. <fileUrl>/thumb (images only)
+    private String previewUrl;    // e.g. <fileUrl>/preview (images only)
     private List<String> deletedFor;
 
 
@@ -34,6 +36,8 @@ public class Message {
         this.content = content;
         this.timestamp = LocalDateTime.now();
     }
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
     public void setRoomId(String roomId) { this.roomId = roomId; }
 
     public String getSender() { return sender; }
@@ -94,5 +98,21 @@ public void setFileSize(Long fileSize) {
     this.fileSize = fileSize;
 }
 
+public String getThumbnailUrl() {
+    return thumbnailUrl;
+}
+
+public void setThumbnailUrl(String thumbnailUrl) {
+    this.thumbnailUrl = thumbnailUrl;
+}
+
+public String getPreviewUrl() {
+    return previewUrl;
+}
+
+public void setPreviewUrl(String previewUrl) {
+    this.previewUrl = previewUrl;
+}
+
 
 }
@@ -0,0 +1,65 @@
+package com.chatapp.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document(collection = "email_outbox")
+public class OutboxEmail {
+
+    public static final String PENDING = "PENDING";
+    public static final String SENDING = "SENDING";
+    public static final String DEAD = "DEAD";     // gave up (max attempts or expired), kept for inspection for a while
+
+    @Id
+    private String id;
+    private String to;
+    private String subject;
+    private String body;
+    private String status;
+    private int attempts;
+    private Long nextAttemptAt;   // epoch millis
+    private Long lockedUntil;     // epoch millis, lease while a dispatcher is sending it
+    private String lastError;
+    private Long createdAt;
+    private Long expiresAt;       // epoch millis, dead-lettered instead of sent after this (null = never)
+    private Date deadAt;          // when it was parked as DEAD; a BSON date, so a TTL index can remove it later
+
+    public OutboxEmail() {}
+
+    public OutboxEmail(String to, String subject, String body) {
+        this.to = to;
+        this.subject = subject;
+        this.body = body;
+        this.status = PENDING;
+        this.createdAt = System.currentTimeMillis();
+        this.nextAttemptAt = this.createdAt;
+    }
+
+    public String getId() { return id; }
+    public String getTo() { return to; }
+    public String getSubject() { return subject; }
+    public String getBody() { return body; }
+    public String getStatus() { return status; }
+    public int getAttempts() { return attempts; }
+    public Long getNextAttemptAt() { return nextAttemptAt; }
+    public Long getLockedUntil() { return lockedUntil; }
+    public String getLastError() { return lastError; }
+    public Long getCreatedAt() { return createdAt; }
+    public Long getExpiresAt() { return expiresAt; }
+    public Date getDeadAt() { return deadAt; }
+
+    public void setId(String id) { this.id = id; }
+    public void setTo(String to) { this.to = to; }
+    public void setSubject(String subject) { this.subject = subject; }
+    public void setBody(String body) { this.body = body; }
+    public void setStatus(String status) { this.status = status; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public void setNextAttemptAt(Long nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+    public void setLockedUntil(Long lockedUntil) { this.lockedUntil = lockedUntil; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public void setCreatedAt(Long createdAt) { this.createdAt = createdAt; }
+    public void setExpiresAt(Long expiresAt) { this.expiresAt = expiresAt; }
+    public void setDeadAt(Date deadAt) { this.deadAt = deadAt; }
+}
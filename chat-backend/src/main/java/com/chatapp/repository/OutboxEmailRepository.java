@@ -0,0 +1,8 @@
+package com.chatapp.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import com.chatapp.model.OutboxEmail;
+
+public interface OutboxEmailRepository extends MongoRepository<OutboxEmail, String> {
+}
@@ -1,7 +1,12 @@
 package com.chatapp.service;
 
+import java.util.List;
 import java.util.Optional;
 
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 
 import com.chatapp.model.Message;
@@ -12,19 +17,162 @@ import com.chatapp.repository.RoomRepository;
 @Service
 public class ChatService {
 
+    // upper bound on what a resumed connection gets replayed
+    private static final int MAX_REPLAY = 500;
+
     private final MessageRepository messageRepo;
     private final RoomRepository roomRepo;
+    private final RecentHistoryCache historyCache;
+    private final MessageArchiveService archive;
 
-    public ChatService(MessageRepository messageRepo, RoomRepository roomRepo) {
+    public ChatService(MessageRepository messageRepo, RoomRepository roomRepo,
+                       RecentHistoryCache historyCache, MessageArchiveService archive) {
         this.messageRepo = messageRepo;
         this.roomRepo = roomRepo;
+        this.historyCache = historyCache;
+        this.archive = archive;
     }
 
     public Message save(Message message) {
-        return messageRepo.save(message);
+        Message saved = messageRepo.save(message);
+        historyCache.append(saved);
+        return saved;
     }
 
     public Optional<Room> findRoom(String roomId) {
         return roomRepo.findById(roomId);
     }
+
+    /** Messages for {@code username} saved after message id {@code position}, oldest first. */
+    public List<Message> missedSince(String username, String position) {
+        if (!ObjectId.isValid(position)) return List.of();
+        List<String> roomIds = roomRepo.findByMembersContaining(username).stream().map(Room::getId).toList();
+        return messageRepo.findMissedSince(new ObjectId(position), username, roomIds,
+                PageRequest.of(0, MAX_REPLAY, Sort.by(Sort.Direction.ASC, "id")));
+    }
+
+    // ---------- history (hot + archive tiers) ----------
+
+    public List<Message> roomHistory(String roomId, String me) {
+        return archive.all(RecentHistoryCache.roomKey(roomId), roomFilter(roomId, me));
+    }
+
+    public List<Message> conversationHistory(String me, String withUser) {
+        return archive.all(directKey(me, withUser), conversationFilter(me, withUser));
+    }
+
+    public List<Message> broadcastHistory() {
+        return archive.all(RecentHistoryCache.BROADCAST_KEY, broadcastFilter());
+    }
+
+    /** Page of {@code limit} messages older than message id {@code before}, oldest first. */
+    public List<Message> roomHistoryPage(String roomId, String me, String before, int limit) {
+        return archive.page(RecentHistoryCache.roomKey(roomId), roomFilter(roomId, me), before, limit);
+    }
+
+    public List<Message> conversationHistoryPage(String me, String withUser, String before, int limit) {
+        return archive.page(directKey(me, withUser), conversationFilter(me, withUser), before, limit);
+    }
+
+    public List<Message> broadcastHistoryPage(String before, int limit) {
+        return archive.page(RecentHistoryCache.BROADCAST_KEY, broadcastFilter(), before, limit);
+    }
+
+    // ---------- recent history (served from the ring cache when warm) ----------
+
+    public List<Message> recentRoomHistory(String roomId, String me, int limit) {
+        return recent(RecentHistoryCache.roomKey(roomId), me, limit,
+                roomFilter(roomId, null), roomFilter(roomId, me));
+    }
+
+    public List<Message> recentConversation(String me, String withUser, int limit) {
+        return recent(RecentHistoryCache.directKey(me, withUser), me, limit,
+                pairFilter(me, withUser), conversationFilter(me, withUser));
+    }
+
+    public List<Message> recentBroadcast(int limit) {
+        // broadcast history is not filtered by deletedFor
+        return recent(RecentHistoryCache.BROADCAST_KEY, null, limit,
+                broadcastFilter(), broadcastFilter());
+    }
+
+    private List<Message> recent(String key, String me, int limit, Criteria all, Criteria visible) {
+        List<Message> cached = historyCache.recent(key, me, limit);
+        if (cached != null) return cached;
+
+        // warm but too few visible to me (e.g. after "delete chat"): reloading the ring would not help
+        if (limit <= historyCache.ringSize() && !historyCache.isWarm(key)) {
+            // the ring holds the latest messages across both tiers, so a short load is the whole conversation
+            int stamp = historyCache.stamp(key);
+            List<Message> latest = archive.page(key, all, null, historyCache.ringSize());
+            boolean complete = latest.size() < historyCache.ringSize();
+            historyCache.load(key, stamp, latest, complete);
+
+            List<Message> page = RecentHistoryCache.tail(latest, me, limit, complete);
+            if (page != null) return page;
+        }
+
+        // too many of the recent messages are deleted for me, or limit exceeds the ring
+        return archive.page(key, visible, null, limit);
+    }
+
+    private static String directKey(String me, String withUser) {
+        return me == null || withUser == null ? null : RecentHistoryCache.directKey(me, withUser);
+    }
+
+    // ---------- filters (indexed on both tiers by MessageArchiveService) ----------
+
+    private static Criteria roomFilter(String roomId, String me) {
+        return notDeletedFor(Criteria.where("roomId").is(roomId), me);
+    }
+
+    private static Criteria conversationFilter(String me, String withUser) {
+        return notDeletedFor(pairFilter(me, withUser), me);
+    }
+
+    private static Criteria pairFilter(String user1, String user2) {
+        return new Criteria().orOperator(
+                Criteria.where("sender").is(user1).and("receiver").is(user2),
+                Criteria.where("sender").is(user2).and("receiver").is(user1));
+    }
+
+    private static Criteria broadcastFilter() {
+        return Criteria.where("receiver").is("ALL");
+    }
+
+    private static Criteria notDeletedFor(Criteria c, String me) {
+        // $ne on an array field also matches documents without the field
+        return me == null ? c : new Criteria().andOperator(c, Criteria.where("deletedFor").ne(me));
+    }
+
+    // ---------- maintenance ----------
+
+    /** Marks a room or 1-to-1 chat deleted for {@code me}, in both tiers, and drops its cached ring. */
+    public void deleteFor(String me, String withUser, String roomId) {
+        if (roomId != null && !roomId.isBlank()) {
+            archive.addDeletedFor(roomFilter(roomId, null), me);
+            evictRoomHistory(roomId);
+        } else {
+            archive.addDeletedFor(pairFilter(me, withUser), me);
+            if (withUser != null) evictConversationHistory(me, withUser);
+        }
+    }
+
+    /** Renames the sender on every message, in both tiers. */
+    public void renameSender(String from, String to) {
+        archive.renameSender(from, to);
+        evictAllHistory();
+    }
+
+    public void evictRoomHistory(String roomId) {
+        historyCache.invalidate(RecentHistoryCache.roomKey(roomId));
+    }
+
+    public void evictConversationHistory(String user1, String user2) {
+        historyCache.invalidate(RecentHistoryCache.directKey(user1, user2));
+    }
+
+    public void evictAllHistory() {
+        historyCache.clear();
+    }
 }
@@ -0,0 +1,213 @@
+package com.chatapp.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.chatapp.model.OutboxEmail;
+import com.chatapp.repository.OutboxEmailRepository;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+
+/**
+ * Drains the email outbox in the background.
+ *
+ * Due emails are claimed with a lease (so several nodes can run this side
+ * by side) and sent as one batch over a single SMTP connection. Every claim
+ * counts as an attempt, so an email whose send never completes (the
+ * dispatcher dies holding it) still runs out. Failures are retried with
+ * exponential backoff; after {@code maxAttempts}, or once the email's
+ * {@code expiresAt} has passed, it is parked as DEAD, and a TTL index
+ * removes it {@code app.mail.outbox.dead-retention-days} later.
+ */
+@Component
+@ConditionalOnProperty(name = "app.mail.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class EmailOutboxDispatcher {
+
+    // long enough for a full batch at the 5s SMTP timeouts
+    private static final long LEASE_MS = 5 * 60_000;
+
+    private static final String DEAD_TTL_INDEX = "deadAt_ttl";
+    private static final int INDEX_OPTIONS_CONFLICT = 85;
+
+    private final MongoTemplate mongo;
+    private final OutboxEmailRepository outboxRepo;
+    private final JavaMailSender mailSender;
+
+    @Value("${spring.mail.username:}")
+    private String from;
+
+    @Value("${app.mail.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${app.mail.outbox.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${app.mail.outbox.backoff-ms:30000}")
+    private long backoffMs;
+
+    @Value("${app.mail.outbox.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+
+    @Value("${app.mail.outbox.dead-retention-days:30}")
+    private long deadRetentionDays;
+
+    public EmailOutboxDispatcher(MongoTemplate mongo, OutboxEmailRepository outboxRepo, JavaMailSender mailSender) {
+        this.mongo = mongo;
+        this.outboxRepo = outboxRepo;
+        this.mailSender = mailSender;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        MongoCollection<Document> outbox = mongo.getCollection(mongo.getCollectionName(OutboxEmail.class));
+
+        // every branch of the claim's $or needs an index, or the whole query scans the collection
+        outbox.createIndex(Indexes.ascending("status", "nextAttemptAt"));
+        outbox.createIndex(Indexes.ascending("status", "lockedUntil"));
+
+        // only DEAD rows have deadAt, so only they expire
+        long ttlSeconds = Duration.ofDays(deadRetentionDays).toSeconds();
+        try {
+            outbox.createIndex(Indexes.ascending("deadAt"),
+                    new IndexOptions().name(DEAD_TTL_INDEX).expireAfter(ttlSeconds, TimeUnit.SECONDS));
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() != INDEX_OPTIONS_CONFLICT) throw e;
+            // retention changed since the index was created: update it in place
+            mongo.executeCommand(new Document("collMod", outbox.getNamespace().getCollectionName())
+                    .append("index", new Document("name", DEAD_TTL_INDEX).append("expireAfterSeconds", ttlSeconds)));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.mail.outbox.poll-ms:1000}")
+    public void dispatch() {
+        List<OutboxEmail> batch;
+        do {
+            batch = claimBatch();
+            if (!batch.isEmpty()) send(batch);
+        } while (batch.size() == batchSize);
+    }
+
+    private List<OutboxEmail> claimBatch() {
+        List<OutboxEmail> batch = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        // due PENDING emails, plus SENDING ones whose lease ran out (dispatcher died mid-send)
+        Query due = new Query(new Criteria().orOperator(
+                Criteria.where("status").is(OutboxEmail.PENDING).and("nextAttemptAt").lte(now),
+                Criteria.where("status").is(OutboxEmail.SENDING).and("lockedUntil").lt(now)))
+                .with(Sort.by("nextAttemptAt"));
+        Update claim = new Update()
+                .set("status", OutboxEmail.SENDING)
+                .set("lockedUntil", now + LEASE_MS)
+                .inc("attempts", 1);
+
+        while (batch.size() < batchSize) {
+            OutboxEmail e = mongo.findAndModify(due, claim, FindAndModifyOptions.options().returnNew(true), OutboxEmail.class);
+            if (e == null) break;
+            batch.add(e);
+        }
+        return batch;
+    }
+
+    private void send(List<OutboxEmail> batch) {
+        long now = System.currentTimeMillis();
+        Map<SimpleMailMessage, OutboxEmail> byMessage = new IdentityHashMap<>();
+        for (OutboxEmail e : batch) {
+            if (e.getExpiresAt() != null && e.getExpiresAt() <= now) {
+                deadLetter(e, "Expired before it could be delivered");
+                continue;
+            }
+            if (e.getAttempts() > maxAttempts) {
+                // already claimed maxAttempts times and the last claim's lease ran out mid-send
+                deadLetter(e, "Gave up after " + maxAttempts + " attempts, the last one never finished");
+                continue;
+            }
+
+            SimpleMailMessage msg = new SimpleMailMessage();
+            if (from != null && !from.isBlank()) msg.setFrom(from);
+            msg.setTo(e.getTo());
+            msg.setSubject(e.getSubject());
+            msg.setText(e.getBody());
+            byMessage.put(msg, e);
+        }
+
+        if (byMessage.isEmpty()) return;
+
+        Map<Object, Exception> failed = new IdentityHashMap<>();
+        try {
+            // JavaMailSenderImpl connects once and sends the whole array over that transport
+            mailSender.send(byMessage.keySet().toArray(new SimpleMailMessage[0]));
+        } catch (MailSendException ex) {
+            // connection failures list every message; an empty map means all were sent and only closing failed
+            failed.putAll(ex.getFailedMessages());
+        } catch (MailException ex) {
+            // e.g. authentication failure: nothing went out
+            for (SimpleMailMessage msg : byMessage.keySet()) failed.put(msg, ex);
+        }
+
+        for (Map.Entry<SimpleMailMessage, OutboxEmail> entry : byMessage.entrySet()) {
+            Exception error = failed.get(entry.getKey());
+            if (error == null) {
+                outboxRepo.deleteById(entry.getValue().getId());
+            } else {
+                retryLater(entry.getValue(), error);
+            }
+        }
+    }
+
+    // attempts was already counted when the email was claimed
+    private void retryLater(OutboxEmail e, Exception error) {
+        String lastError = String.valueOf(error.getMessage());
+        if (e.getAttempts() >= maxAttempts) {
+            deadLetter(e, lastError);
+            return;
+        }
+
+        long delay = Math.min(maxBackoffMs, backoffMs << Math.min(e.getAttempts() - 1, 20));
+        long next = System.currentTimeMillis() + delay;
+        if (e.getExpiresAt() != null && next >= e.getExpiresAt()) {
+            // the retry would only deliver a dead link
+            deadLetter(e, lastError);
+            return;
+        }
+
+        e.setStatus(OutboxEmail.PENDING);
+        e.setLastError(lastError);
+        e.setLockedUntil(null);
+        e.setNextAttemptAt(next);
+        outboxRepo.save(e);
+    }
+
+    private void deadLetter(OutboxEmail e, String reason) {
+        e.setStatus(OutboxEmail.DEAD);
+        e.setLastError(reason);
+        e.setLockedUntil(null);
+        e.setDeadAt(new Date());
+        outboxRepo.save(e);
+    }
+}
@@ -4,38 +4,39 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import com.chatapp.model.OutboxEmail;
+import com.chatapp.repository.OutboxEmailRepository;
+
 @Service
 public class EmailService {
 
-    private final JavaMailSender mailSender;
+    private final OutboxEmailRepository outboxRepo;
 
     @Value("${app.frontend.base-url}")
     private String frontendBaseUrl;
 
-    public EmailService(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
+    public EmailService(OutboxEmailRepository outboxRepo) {
+        this.outboxRepo = outboxRepo;
     }
 
-    public void sendResetEmail(String toEmail, String token) {
+    // Queues the email in the outbox; EmailOutboxDispatcher sends it in the background,
+    // or drops it once the link has expired (expiresAt, epoch millis).
+    public void sendResetEmail(String toEmail, String token, long expiresAt) {
         String url = frontendBaseUrl +
                 "/?mode=reset&token=" +
                 URLEncoder.encode(token, StandardCharsets.UTF_8);
 
-        SimpleMailMessage msg = new SimpleMailMessage();
-        msg.setTo(toEmail);
-        msg.setSubject("Chat App - Reset your password");
-        msg.setText(
+        String text =
             "You requested a password reset.\n\n" +
             "Click this link to reset your password:\n" +
             url + "\n\n" +
             "This link expires in 15 minutes.\n" +
-            "If you did not request this, ignore this email."
-        );
+            "If you did not request this, ignore this email.";
 
-        mailSender.send(msg);
+        OutboxEmail email = new OutboxEmail(toEmail, "Chat App - Reset your password", text);
+        email.setExpiresAt(expiresAt);
+        outboxRepo.save(email);
     }
 }
@@ -0,0 +1,362 @@
+package com.chatapp.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+/**
+ * Generates downscaled variants of uploaded images in the background:
+ * a small "thumb" for the timeline and a "preview" for viewing, both
+ * written next to the uploads under uploads/previews.
+ *
+ * Only what javax.imageio reads out of the box (JPEG, PNG, BMP, TIFF)
+ * within {@code app.media.max-pixels} gets variants; GIFs, which may be
+ * animated, and anything else keep being served as the original. Uploads
+ * that turn out not to be decodable get a ".failed" marker so they are not
+ * queued again.
+ */
+@Service
+public class MediaPreviewService {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaPreviewService.class);
+
+    public enum Variant {
+        THUMB(320), PREVIEW(1280);
+
+        final int maxSize;
+
+        Variant(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public static Optional<Variant> parse(String s) {
+            for (Variant v : values()) {
+                if (v.name().equalsIgnoreCase(s)) return Optional.of(v);
+            }
+            return Optional.empty();
+        }
+    }
+
+    private final Path uploadDir = Paths.get("uploads");
+    private final Path previewDir = uploadDir.resolve("previews");
+
+    private final TaskExecutor mediaExecutor;
+
+    // names queued or being processed, so a burst of requests doesn't schedule the same work twice
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.media.max-pixels:40000000}")
+    private long maxPixels;
+
+    @Value("${app.media.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    public MediaPreviewService(@Qualifier("mediaExecutor") TaskExecutor mediaExecutor) {
+        this.mediaExecutor = mediaExecutor;
+    }
+
+    /**
+     * True if variants can be generated for an upload: a JDK reader exists
+     * for its type and the header says it is within {@code maxPixels}.
+     */
+    public boolean canPreview(Path file, String contentType) {
+        if (contentType == null || !ImageIO.getImageReadersByMIMEType(contentType.toLowerCase()).hasNext()) return false;
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            ImageReader reader = reader(in);
+            if (reader == null) return false;
+            try {
+                return withinLimit(reader);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            // unreadable header: treated like any other file
+            return false;
+        }
+    }
+
+    /** True once generation has failed for good (undecodable, or too large). */
+    public boolean hasFailed(String storedName) {
+        return Files.exists(failedMarker(storedName));
+    }
+
+    /** Queues variant generation for a stored upload; skipped when the pipeline is full. */
+    public void submit(String storedName) {
+        if (!inFlight.add(storedName)) return;
+        try {
+            mediaExecutor.execute(() -> {
+                try {
+                    generate(storedName);
+                } finally {
+                    inFlight.remove(storedName);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // requested again on the next miss in find()
+            inFlight.remove(storedName);
+        }
+    }
+
+    /** Generated variant file, if it is ready. */
+    public Optional<Path> find(String storedName, Variant variant) {
+        for (String ext : new String[] { "jpg", "png" }) {
+            Path p = variantPath(storedName, variant, ext);
+            if (Files.exists(p)) return Optional.of(p);
+        }
+        return Optional.empty();
+    }
+
+    private Path variantPath(String storedName, Variant variant, String ext) {
+        return previewDir.resolve(storedName + "." + variant.name().toLowerCase() + "." + ext);
+    }
+
+    private Path failedMarker(String storedName) {
+        return previewDir.resolve(storedName + ".failed");
+    }
+
+    private void generate(String storedName) {
+        Path source = uploadDir.resolve(storedName);
+        if (!Files.exists(source)) return;
+
+        // decode once at (roughly) twice the preview size; the thumb is scaled from the preview
+        BufferedImage decoded;
+        try {
+            decoded = read(source, Variant.PREVIEW.maxSize);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot decode {} for previews: {}", storedName, e.toString());
+            decoded = null;
+        }
+        if (decoded == null) {
+            // unsupported, corrupt or over max-pixels: permanent, the timeline keeps using the original
+            markFailed(storedName);
+            return;
+        }
+
+        try {
+            Files.createDirectories(previewDir);
+            // ImageIO ignores EXIF orientation, browsers honour it on the original: match them
+            BufferedImage preview = scale(orient(decoded, exifOrientation(source)), Variant.PREVIEW.maxSize);
+            write(scale(preview, Variant.THUMB.maxSize), storedName, Variant.THUMB);
+            write(preview, storedName, Variant.PREVIEW);
+        } catch (IOException e) {
+            // disk trouble is not the image's fault: not marked, retried on the next variant request
+            log.error("Writing previews for {} failed", storedName, e);
+        }
+    }
+
+    private void markFailed(String storedName) {
+        try {
+            Files.createDirectories(previewDir);
+            Files.write(failedMarker(storedName), new byte[0]);
+        } catch (IOException e) {
+            log.error("Cannot record preview failure for {}", storedName, e);
+        }
+    }
+
+    /**
+     * Decodes the image with source subsampling so big photos are never
+     * fully materialised. Returns null if no ImageIO reader handles the
+     * format or the image is larger than {@code maxPixels}.
+     */
+    private BufferedImage read(Path source, int targetSize) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            ImageReader reader = reader(in);
+            if (reader == null) return null;
+            try {
+                if (!withinLimit(reader)) return null;
+
+                int w = reader.getWidth(0);
+                int h = reader.getHeight(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(w, h) / (targetSize * 2));
+                if (step > 1) param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // reader positioned on the stream, or null if no ImageIO plugin recognises it;
+    // GIFs count as unsupported, a variant would freeze an animation on its first frame
+    private static ImageReader reader(ImageInputStream in) throws IOException {
+        if (in == null) return null;
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) return null;
+        ImageReader reader = readers.next();
+        if ("gif".equalsIgnoreCase(reader.getFormatName())) {
+            reader.dispose();
+            return null;
+        }
+        reader.setInput(in, true, true);
+        return reader;
+    }
+
+    // only reads the header
+    private boolean withinLimit(ImageReader reader) throws IOException {
+        return (long) reader.getWidth(0) * reader.getHeight(0) <= maxPixels;
+    }
+
+    /**
+     * EXIF Orientation (1-8) of a JPEG, read from its APP1 segment; 1 when
+     * the file is not a JPEG or carries no usable tag.
+     */
+    static int exifOrientation(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readUnsignedShort() != 0xFFD8) return 1;
+            while (true) {
+                int marker = in.readUnsignedShort();
+                // metadata segments all come before the image data (SOS)
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) return 1;
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) return 1;
+                byte[] segment = new byte[length];
+                in.readFully(segment);
+                if (marker == 0xFFE1) {
+                    int orientation = orientationTag(segment);
+                    if (orientation != 0) return orientation;
+                }
+            }
+        } catch (IOException e) {
+            // truncated or unreadable header: treat as upright
+            return 1;
+        }
+    }
+
+    // "Exif\0\0" + TIFF header + IFD0; 0 if the segment is not EXIF or has no orientation tag
+    private static int orientationTag(byte[] segment) {
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i' || segment[3] != 'f') {
+            return 0;
+        }
+        int tiff = 6;
+        ByteBuffer buf = ByteBuffer.wrap(segment);
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (segment[tiff] != 'M' || segment[tiff + 1] != 'M') {
+            return 0;
+        }
+        try {
+            int ifd0 = tiff + buf.getInt(tiff + 4);
+            int entries = buf.getShort(ifd0) & 0xFFFF;
+            for (int i = 0; i < entries; i++) {
+                int entry = ifd0 + 2 + 12 * i;
+                if ((buf.getShort(entry) & 0xFFFF) == 0x0112) {
+                    int value = buf.getShort(entry + 8) & 0xFFFF;
+                    return value >= 1 && value <= 8 ? value : 0;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // malformed IFD
+        }
+        return 0;
+    }
+
+    /** Rotates/flips a decoded image so it displays upright for the given EXIF orientation. */
+    static BufferedImage orient(BufferedImage src, int orientation) {
+        if (orientation < 2 || orientation > 8) return src;
+        int w = src.getWidth();
+        int h = src.getHeight();
+
+        // maps source pixel (x, y) to its upright position
+        AffineTransform t = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);   // mirrored
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);  // upside down
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);   // mirrored, upside down
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);    // transposed
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);   // needs 90 degrees clockwise
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);  // transversed
+            default -> new AffineTransform(0, -1, 1, 0, 0, w);  // 8: needs 90 degrees counter-clockwise
+        };
+
+        boolean swap = orientation >= 5;
+        int type = src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage out = new BufferedImage(swap ? h : w, swap ? w : h, type);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.drawImage(src, t, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static BufferedImage scale(BufferedImage src, int maxSize) {
+        double ratio = Math.min(1.0, (double) maxSize / Math.max(src.getWidth(), src.getHeight()));
+        int w = Math.max(1, (int) Math.round(src.getWidth() * ratio));
+        int h = Math.max(1, (int) Math.round(src.getHeight() * ratio));
+
+        int type = src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage out = new BufferedImage(w, h, type);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(src, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    // JPEG unless the image has transparency; written to a temp file and moved so readers never see a partial file
+    private void write(BufferedImage img, String storedName, Variant variant) throws IOException {
+        boolean alpha = img.getColorModel().hasAlpha();
+        Path target = variantPath(storedName, variant, alpha ? "png" : "jpg");
+        Path tmp = Files.createTempFile(previewDir, storedName, ".tmp");
+
+        try {
+            if (alpha) {
+                ImageIO.write(img, "png", tmp.toFile());
+            } else {
+                writeJpeg(img, tmp);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void writeJpeg(BufferedImage img, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.chatapp.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.chatapp.model.Message;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+
+/**
+ * Hot/cold message storage.
+ *
+ * Messages older than {@code app.archive.max-age-days} are moved out of
+ * "messages" into one compressed collection per month
+ * ("messages_archive_yyyy_MM", by ObjectId creation time). History reads go
+ * through {@link #page} / {@link #all}, which continue into the archive
+ * partitions when the hot collection runs out.
+ *
+ * The archiver also records, per conversation, the oldest and newest
+ * archived message id ("archived_conversations"). Reads look that up once
+ * and only walk the partitions in between; a conversation without an entry
+ * has nothing archived and is served from the hot collection alone.
+ */
+@Service
+public class MessageArchiveService {
+
+    static final String HOT = "messages";
+    static final String ARCHIVE_PREFIX = "messages_archive_";
+    static final String SPANS = "archived_conversations";
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy_MM").withZone(ZoneOffset.UTC);
+    private static final int NAMESPACE_EXISTS = 48;
+
+    private final MongoTemplate mongo;
+
+    // newest partition first; re-listed after archiving, or when a span reaches past the newest one known
+    private volatile List<String> partitions;
+
+    // collections (hot tier and partitions) whose indexes this node has already made sure of
+    private final Set<String> indexed = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.archive.max-age-days:90}")
+    private long maxAgeDays;
+
+    @Value("${app.archive.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.archive.compressor:zstd}")
+    private String compressor;
+
+    public MessageArchiveService(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    // the hot tier is read with the same filters as the partitions (and by the resume query)
+    @EventListener(ApplicationReadyEvent.class)
+    public void indexHotTier() {
+        ensureIndexes(HOT);
+    }
+
+    // ---------- reads ----------
+
+    /**
+     * Up to {@code limit} messages of conversation {@code key} matching
+     * {@code filter} older than message id {@code before} (null = newest),
+     * oldest first.
+     */
+    public List<Message> page(String key, Criteria filter, String before, int limit) {
+        List<Message> newestFirst = new ArrayList<>(find(HOT, filter, before, limit));
+
+        if (newestFirst.size() < limit) {
+            String cursor = newestFirst.isEmpty() ? before : newestFirst.get(newestFirst.size() - 1).getId();
+            newestFirst.addAll(archived(key, filter, cursor, limit - newestFirst.size()));
+        }
+
+        List<Message> page = new ArrayList<>(newestFirst);
+        Collections.reverse(page);
+        return page;
+    }
+
+    /** Every message of conversation {@code key} matching {@code filter} across all tiers, oldest first. */
+    public List<Message> all(String key, Criteria filter) {
+        List<Message> result = new ArrayList<>();
+        Document span = span(key);
+        if (span != null) {
+            String oldest = partitionOf(span.getObjectId("oldest"));
+            String newest = partitionOf(span.getObjectId("newest"));
+            List<String> oldestFirst = new ArrayList<>(partitionsThrough(newest));
+            Collections.reverse(oldestFirst);
+            for (String partition : oldestFirst) {
+                if (partition.compareTo(oldest) < 0) continue;
+                if (partition.compareTo(newest) > 0) break;
+                result.addAll(mongo.find(new Query(filter).with(Sort.by("id")), Message.class, partition));
+            }
+        }
+        result.addAll(mongo.find(new Query(filter).with(Sort.by("id")), Message.class, HOT));
+        return result;
+    }
+
+    // newest first, only through the partitions the conversation has archived messages in
+    private List<Message> archived(String key, Criteria filter, String before, int limit) {
+        List<Message> newestFirst = new ArrayList<>();
+        Document span = span(key);
+        if (span == null) return newestFirst;
+
+        String oldest = partitionOf(span.getObjectId("oldest"));
+        String newest = partitionOf(span.getObjectId("newest"));
+        String from = before == null ? newest : min(newest, partitionOf(new ObjectId(before)));
+
+        for (String partition : partitionsThrough(newest)) {
+            if (partition.compareTo(from) > 0) continue;
+            if (partition.compareTo(oldest) < 0) break;
+            List<Message> older = find(partition, filter, before, limit - newestFirst.size());
+            newestFirst.addAll(older);
+            if (newestFirst.size() == limit) break;
+            if (!older.isEmpty()) before = older.get(older.size() - 1).getId();
+        }
+        return newestFirst;
+    }
+
+    private Document span(String key) {
+        return key == null ? null : mongo.findById(key, Document.class, SPANS);
+    }
+
+    private List<Message> find(String collection, Criteria filter, String before, int limit) {
+        Query q = new Query(filter);
+        if (before != null) q.addCriteria(Criteria.where("id").lt(new ObjectId(before)));
+        q.with(Sort.by(Sort.Direction.DESC, "id")).limit(limit);
+        return mongo.find(q, Message.class, collection);
+    }
+
+    // ---------- updates, applied in place to both tiers ----------
+    // (never load-then-save: a copy loaded before the archiver deletes it would be re-inserted into the hot tier)
+
+    public void addDeletedFor(Criteria filter, String username) {
+        Update update = new Update().addToSet("deletedFor", username);
+        mongo.updateMulti(new Query(filter), update, HOT);
+        for (String partition : refreshPartitions()) {
+            mongo.updateMulti(new Query(filter), update, partition);
+        }
+    }
+
+    public void renameSender(String from, String to) {
+        Query query = new Query(Criteria.where("sender").is(from));
+        Update update = new Update().set("sender", to);
+        mongo.updateMulti(query, update, HOT);
+        for (String partition : refreshPartitions()) {
+            mongo.updateMulti(query, update, partition);
+        }
+
+        // renamed messages now also belong to the renamed 1-to-1 conversations
+        for (Document span : mongo.find(new Query(Criteria.where("users").is(from)), Document.class, SPANS)) {
+            List<String> users = span.getList("users", String.class).stream()
+                    .map(u -> u.equals(from) ? to : u)
+                    .toList();
+            mongo.upsert(new Query(Criteria.where("_id").is(RecentHistoryCache.directKey(users.get(0), users.get(1)))),
+                    new Update().min("oldest", span.getObjectId("oldest"))
+                            .max("newest", span.getObjectId("newest"))
+                            .setOnInsert("users", users),
+                    SPANS);
+        }
+    }
+
+    // ---------- archiver ----------
+
+    @Scheduled(initialDelayString = "${app.archive.initial-delay-ms:60000}",
+               fixedDelayString = "${app.archive.interval-ms:3600000}")
+    public void archive() {
+        if (!enabled) return;
+
+        ObjectId cutoff = new ObjectId(Date.from(Instant.now().minus(Duration.ofDays(maxAgeDays))));
+        Query oldest = new Query(Criteria.where("_id").lt(cutoff)).with(Sort.by("_id")).limit(batchSize);
+
+        List<Document> batch;
+        do {
+            batch = mongo.find(oldest, Document.class, HOT);
+
+            // group by month, keeping _id order
+            Map<String, List<Document>> byPartition = new LinkedHashMap<>();
+            for (Document doc : batch) {
+                String partition = partitionOf(doc.getObjectId("_id"));
+                byPartition.computeIfAbsent(partition, k -> new ArrayList<>()).add(doc);
+            }
+
+            for (String partition : byPartition.keySet()) {
+                ensurePartition(partition);
+            }
+            // spans first: a reader that no longer finds a message in the hot tier knows where to look
+            recordSpans(batch);
+            for (Map.Entry<String, List<Document>> e : byPartition.entrySet()) {
+                copy(e.getKey(), e.getValue());
+            }
+
+            // only remove from the hot tier once every copy is in place, and only messages nobody
+            // updated meanwhile; the rest are copied again (replacing the stale copy) on the next pass
+            List<DeleteOneModel<Document>> deletes = batch.stream().map(d -> new DeleteOneModel<Document>(unchanged(d))).toList();
+            if (!deletes.isEmpty()) mongo.getCollection(HOT).bulkWrite(deletes, new BulkWriteOptions().ordered(false));
+        } while (batch.size() == batchSize);
+
+        refreshPartitions();
+    }
+
+    private void recordSpans(List<Document> batch) {
+        if (batch.isEmpty()) return;
+        BulkOperations ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, SPANS);
+        for (Document doc : batch) {
+            String sender = doc.getString("sender");
+            String receiver = doc.getString("receiver");
+            String key = RecentHistoryCache.keyOf(doc.getString("roomId"), sender, receiver);
+            if (key == null) continue;
+
+            ObjectId id = doc.getObjectId("_id");
+            Update update = new Update().min("oldest", id).max("newest", id);
+            if (key.startsWith("dm:")) update.setOnInsert("users", List.of(sender, receiver));
+            ops.upsert(new Query(Criteria.where("_id").is(key)), update);
+        }
+        ops.execute();
+    }
+
+    // upserts rather than inserts, so a rerun refreshes copies a previous run left behind
+    private void copy(String partition, List<Document> docs) {
+        List<ReplaceOneModel<Document>> writes = docs.stream()
+                .map(d -> new ReplaceOneModel<>(Filters.eq("_id", d.get("_id")), d, new ReplaceOptions().upsert(true)))
+                .toList();
+        mongo.getCollection(partition).bulkWrite(writes, new BulkWriteOptions().ordered(false));
+    }
+
+    // sender and deletedFor are the only fields changed after a message is saved
+    static Bson unchanged(Document doc) {
+        Bson deletedFor = doc.containsKey("deletedFor")
+                ? Filters.eq("deletedFor", doc.get("deletedFor"))
+                : Filters.exists("deletedFor", false);
+        return Filters.and(Filters.eq("_id", doc.get("_id")), Filters.eq("sender", doc.get("sender")), deletedFor);
+    }
+
+    private void ensurePartition(String name) {
+        if (!partitions().contains(name)) {
+            try {
+                Document wiredTiger = new Document("configString", "block_compressor=" + compressor);
+                mongo.getDb().createCollection(name,
+                        new CreateCollectionOptions().storageEngineOptions(new Document("wiredTiger", wiredTiger)));
+            } catch (MongoCommandException e) {
+                // storage engine options not allowed here (e.g. some hosted tiers): fall back to a plain collection
+                if (e.getErrorCode() != NAMESPACE_EXISTS && !mongo.collectionExists(name)) mongo.createCollection(name);
+            }
+            refreshPartitions();
+        }
+        ensureIndexes(name);
+    }
+
+    // same shapes as the history filters, newest-first by _id
+    private void ensureIndexes(String name) {
+        if (indexed.add(name)) {
+            mongo.getCollection(name).createIndex(Indexes.ascending("roomId", "_id"));
+            mongo.getCollection(name).createIndex(Indexes.ascending("sender", "receiver", "_id"));
+            mongo.getCollection(name).createIndex(Indexes.ascending("receiver", "_id"));
+        }
+    }
+
+    // ---------- partitions ----------
+
+    static String partitionOf(ObjectId id) {
+        return ARCHIVE_PREFIX + MONTH.format(id.getDate().toInstant());
+    }
+
+    private static String min(String a, String b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private List<String> partitions() {
+        List<String> p = partitions;
+        return p != null ? p : refreshPartitions();
+    }
+
+    // partitions only ever appear newer than the ones already archived, so the cached list is
+    // re-listed only when a conversation has archived messages in a month newer than its head
+    private List<String> partitionsThrough(String newest) {
+        List<String> p = partitions();
+        return !p.isEmpty() && p.get(0).compareTo(newest) >= 0 ? p : refreshPartitions();
+    }
+
+    private List<String> refreshPartitions() {
+        List<String> p = mongo.getCollectionNames().stream()
+                .filter(n -> n.startsWith(ARCHIVE_PREFIX))
+                .sorted(Comparator.reverseOrder())
+                .toList();
+        partitions = p;
+        return p;
+    }
+}
@@ -0,0 +1,45 @@
+package com.chatapp.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Runs bcrypt on the bounded auth pool so a burst of logins queues there
+ * instead of occupying request threads that chat traffic needs.
+ */
+@Service
+public class PasswordService {
+
+    private final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
+    private final TaskExecutor authExecutor;
+
+    public PasswordService(@Qualifier("authExecutor") TaskExecutor authExecutor) {
+        this.authExecutor = authExecutor;
+    }
+
+    public CompletableFuture<Boolean> matches(String raw, String encoded) {
+        return submit(() -> encoded != null && encoder.matches(raw, encoded));
+    }
+
+    public CompletableFuture<String> encode(String raw) {
+        return submit(() -> encoder.encode(raw));
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, authExecutor);
+        } catch (TaskRejectedException e) {
+            // pool and queue are full: shed the request rather than pile up
+            return CompletableFuture.failedFuture(
+                    new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many auth requests, retry shortly"));
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.chatapp.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.chatapp.model.Message;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * In-memory ring of the most recent messages per conversation.
+ *
+ * Each conversation (room, 1-to-1 pair or broadcast) keeps at most
+ * {@code ringSize} messages. Conversations are evicted least-recently-used
+ * first once either the conversation count or the estimated byte footprint
+ * goes over its cap.
+ */
+@Component
+public class RecentHistoryCache {
+
+    static final String BROADCAST_KEY = "broadcast";
+
+    private static final int STAMP_STRIPES = 256;
+
+    private final int ringSize;
+    private final int maxConversations;
+    private final long maxBytes;
+
+    // access-ordered, so iteration starts at the least recently used ring
+    private final LinkedHashMap<String, Ring> rings = new LinkedHashMap<>(64, 0.75f, true);
+
+    // bumped on every write/eviction of a key's stripe; a cold load that raced a write is not installed
+    private final AtomicIntegerArray stamps = new AtomicIntegerArray(STAMP_STRIPES);
+
+    private long totalBytes;
+    private int totalMessages;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public RecentHistoryCache(MeterRegistry registry,
+                              @Value("${app.history-cache.ring-size:100}") int ringSize,
+                              @Value("${app.history-cache.max-conversations:5000}") int maxConversations,
+                              @Value("${app.history-cache.max-bytes:67108864}") long maxBytes) {
+        this.ringSize = ringSize;
+        this.maxConversations = maxConversations;
+        this.maxBytes = maxBytes;
+
+        this.hits = Counter.builder("chat.history.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("chat.history.cache.requests").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("chat.history.cache.evictions").register(registry);
+
+        Gauge.builder("chat.history.cache.hit.ratio", this, RecentHistoryCache::hitRatio).register(registry);
+        Gauge.builder("chat.history.cache.conversations", this, RecentHistoryCache::conversationCount).register(registry);
+        Gauge.builder("chat.history.cache.messages", this, RecentHistoryCache::messageCount).register(registry);
+        Gauge.builder("chat.history.cache.size", this, RecentHistoryCache::estimatedBytes)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    // ---------- keys ----------
+
+    static String roomKey(String roomId) {
+        return "room:" + roomId;
+    }
+
+    static String directKey(String a, String b) {
+        return a.compareTo(b) <= 0 ? "dm:" + a + "\n" + b : "dm:" + b + "\n" + a;
+    }
+
+    /** Key of the conversation a saved message belongs to, or null if it is not cached. */
+    static String keyOf(Message m) {
+        return keyOf(m.getRoomId(), m.getSender(), m.getReceiver());
+    }
+
+    static String keyOf(String roomId, String sender, String receiver) {
+        if (roomId != null && !roomId.isBlank()) return roomKey(roomId);
+        if ("ALL".equals(receiver)) return BROADCAST_KEY;
+        if (sender == null || receiver == null) return null;
+        return directKey(sender, receiver);
+    }
+
+    public int ringSize() {
+        return ringSize;
+    }
+
+    // ---------- reads ----------
+
+    /**
+     * Latest {@code limit} messages visible to {@code me}, oldest first,
+     * or null when the ring is cold or does not hold enough of them.
+     * A null {@code me} disables {@code deletedFor} filtering.
+     */
+    public synchronized List<Message> recent(String key, String me, int limit) {
+        Ring ring = limit <= ringSize ? rings.get(key) : null;
+        List<Message> page = ring == null ? null : tail(ring.messages, me, limit, ring.complete);
+        if (page == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return page;
+    }
+
+    /** True if the conversation has a ring loaded (does not count as a use for LRU). */
+    public synchronized boolean isWarm(String key) {
+        return rings.containsKey(key);
+    }
+
+    /**
+     * Last {@code limit} visible messages of an oldest-first list, or null when
+     * fewer are visible and the list is not the whole conversation.
+     */
+    static List<Message> tail(Iterable<Message> oldestFirst, String me, int limit, boolean complete) {
+        ArrayDeque<Message> page = new ArrayDeque<>(limit);
+        for (Message m : oldestFirst) {
+            if (!visibleTo(m, me)) continue;
+            if (page.size() == limit) page.pollFirst();
+            page.addLast(m);
+        }
+        if (page.size() < limit && !complete) return null;
+        return new ArrayList<>(page);
+    }
+
+    private static boolean visibleTo(Message m, String me) {
+        return me == null || m.getDeletedFor() == null || !m.getDeletedFor().contains(me);
+    }
+
+    // ---------- writes ----------
+
+    /** Stamp to capture before a cold load, passed back to {@link #load}. */
+    public int stamp(String key) {
+        return stamps.get(stripe(key));
+    }
+
+    /**
+     * Installs a ring from a cold load. {@code oldestFirst} is the latest page
+     * of at most {@link #ringSize()} messages, {@code complete} whether that is
+     * the whole conversation; the load is dropped if the conversation was
+     * written to since {@code stamp} was taken.
+     */
+    public synchronized void load(String key, int stamp, List<Message> oldestFirst, boolean complete) {
+        if (stamps.get(stripe(key)) != stamp || rings.containsKey(key)) return;
+
+        Ring ring = new Ring(complete);
+        for (Message m : oldestFirst) {
+            ring.add(m);
+        }
+        rings.put(key, ring);
+        totalBytes += ring.bytes;
+        totalMessages += ring.messages.size();
+        evictOverflow();
+    }
+
+    /** Appends a freshly saved message to its conversation's ring, if that ring is warm. */
+    public synchronized void append(Message m) {
+        String key = keyOf(m);
+        if (key == null) return;
+        stamps.incrementAndGet(stripe(key));
+
+        Ring ring = rings.get(key);
+        if (ring == null) return;
+
+        long before = ring.bytes;
+        int count = ring.messages.size();
+        ring.add(m);
+        while (ring.messages.size() > ringSize) {
+            ring.removeOldest();
+            ring.complete = false;
+        }
+        totalBytes += ring.bytes - before;
+        totalMessages += ring.messages.size() - count;
+        evictOverflow();
+    }
+
+    public synchronized void invalidate(String key) {
+        stamps.incrementAndGet(stripe(key));
+        remove(key);
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < STAMP_STRIPES; i++) {
+            stamps.incrementAndGet(i);
+        }
+        rings.clear();
+        totalBytes = 0;
+        totalMessages = 0;
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Ring>> it = rings.entrySet().iterator();
+        while (it.hasNext() && (rings.size() > maxConversations || totalBytes > maxBytes)) {
+            Ring ring = it.next().getValue();
+            it.remove();
+            totalBytes -= ring.bytes;
+            totalMessages -= ring.messages.size();
+            evictions.increment();
+        }
+    }
+
+    private void remove(String key) {
+        Ring ring = rings.remove(key);
+        if (ring == null) return;
+        totalBytes -= ring.bytes;
+        totalMessages -= ring.messages.size();
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & 0x7fffffff) % STAMP_STRIPES;
+    }
+
+    // ---------- metrics ----------
+
+    private double hitRatio() {
+        double h = hits.count();
+        double total = h + misses.count();
+        return total == 0 ? 0 : h / total;
+    }
+
+    private synchronized int conversationCount() {
+        return rings.size();
+    }
+
+    private synchronized int messageCount() {
+        return totalMessages;
+    }
+
+    private synchronized long estimatedBytes() {
+        return totalBytes;
+    }
+
+    /** Rough heap cost of a cached message: object headers plus UTF-16 string payloads. */
+    static long estimateSize(Message m) {
+        long size = 96;
+        size += sizeOf(m.getSender()) + sizeOf(m.getReceiver()) + sizeOf(m.getContent());
+        size += sizeOf(m.getRoomId()) + sizeOf(m.getType());
+        size += sizeOf(m.getFileUrl()) + sizeOf(m.getFileName()) + sizeOf(m.getFileType());
+        size += sizeOf(m.getThumbnailUrl()) + sizeOf(m.getPreviewUrl());
+        if (m.getDeletedFor() != null) {
+            for (String u : m.getDeletedFor()) size += 8 + sizeOf(u);
+        }
+        return size;
+    }
+
+    private static long sizeOf(String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+
+    private static final class Ring {
+        final ArrayDeque<Message> messages = new ArrayDeque<>();
+        long bytes;
+        // true while the ring holds the whole conversation
+        boolean complete;
+
+        Ring(boolean complete) {
+            this.complete = complete;
+        }
+
+        void add(Message m) {
+            messages.addLast(m);
+            bytes += estimateSize(m);
+        }
+
+        void removeOldest() {
+            bytes -= estimateSize(messages.pollFirst());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.chatapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.stereotype.Service;
+
+import com.chatapp.model.User;
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+
+/**
+ * Issues and verifies the stateless session tokens handed out by /api/login.
+ *
+ * Tokens are HS256 JWTs whose subject is the username, so checking one is an
+ * HMAC over a few hundred bytes - no bcrypt and no Mongo read.
+ */
+@Service
+public class TokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenService.class);
+
+    private static final String ISSUER = "chat-backend";
+
+    // resume tokens carry a delivery position and are only good for one reconnect window
+    private static final String USE_CLAIM = "use";
+    private static final String RESUME = "resume";
+    public static final String POSITION_CLAIM = "pos";
+
+    // kept private on purpose: exposing a JwtDecoder bean switches on Boot's resource-server filter chain
+    private final JwtEncoder encoder;
+    private final JwtDecoder decoder;
+    private final Duration ttl;
+    private final Duration resumeTtl;
+
+    public TokenService(@Value("${app.auth.jwt-secret:}") String secret,
+                        @Value("${app.auth.token-ttl-minutes:720}") long ttlMinutes,
+                        @Value("${app.drain.resume-ttl-seconds:300}") long resumeTtlSeconds,
+                        Environment environment) {
+        SecretKey key = new SecretKeySpec(secretBytes(secret, environment.matchesProfiles("dev")), "HmacSHA256");
+        this.encoder = new NimbusJwtEncoder(new ImmutableSecret<>(key));
+        this.decoder = NimbusJwtDecoder.withSecretKey(key).macAlgorithm(MacAlgorithm.HS256).build();
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.resumeTtl = Duration.ofSeconds(resumeTtlSeconds);
+    }
+
+    private static byte[] secretBytes(String secret, boolean dev) {
+        if (secret == null || secret.isBlank()) {
+            // a per-process key logs everyone out on every restart and breaks drain/resume across nodes
+            if (!dev) {
+                throw new IllegalStateException(
+                        "JWT_SECRET (app.auth.jwt-secret) is not set; set it, or run with the 'dev' profile for a throwaway key");
+            }
+            log.warn("JWT_SECRET not set: signing with a random key, every restart invalidates all sessions (dev profile only)");
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            return random;
+        }
+        byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < 32) {
+            throw new IllegalStateException("app.auth.jwt-secret must be at least 32 bytes");
+        }
+        return bytes;
+    }
+
+    public String issue(User user) {
+        Instant now = Instant.now();
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+                .issuer(ISSUER)
+                .subject(user.getUsername())
+                .issuedAt(now)
+                .expiresAt(now.plus(ttl))
+                .build();
+        return encode(claims);
+    }
+
+    /** Token handed to a client when its node drains; position is the last message id it received (may be null). */
+    public String issueResume(String username, String position) {
+        Instant now = Instant.now();
+        JwtClaimsSet.Builder claims = JwtClaimsSet.builder()
+                .issuer(ISSUER)
+                .subject(username)
+                .issuedAt(now)
+                .expiresAt(now.plus(resumeTtl))
+                .claim(USE_CLAIM, RESUME);
+        if (position != null) claims.claim(POSITION_CLAIM, position);
+        return encode(claims.build());
+    }
+
+    private String encode(JwtClaimsSet claims) {
+        JwsHeader header = JwsHeader.with(MacAlgorithm.HS256).build();
+        return encoder.encode(JwtEncoderParameters.from(header, claims)).getTokenValue();
+    }
+
+    /** Username the token was issued to, or empty if it is malformed, forged or expired. */
+    public Optional<String> verify(String token) {
+        return decode(token)
+                .filter(jwt -> !RESUME.equals(jwt.getClaimAsString(USE_CLAIM)))
+                .map(Jwt::getSubject);
+    }
+
+    public Optional<Jwt> verifyResume(String token) {
+        return decode(token).filter(jwt -> RESUME.equals(jwt.getClaimAsString(USE_CLAIM)));
+    }
+
+    private Optional<Jwt> decode(String token) {
+        if (token == null || token.isBlank()) return Optional.empty();
+        try {
+            return Optional.of(decoder.decode(token));
+        } catch (JwtException e) {
+            return Optional.empty();
+        }
+    }
+}
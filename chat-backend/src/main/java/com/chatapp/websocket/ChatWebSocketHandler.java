@@ -1,14 +1,19 @@
 package com.chatapp.websocket;
 
-import java.net.URI;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
@@ -16,11 +21,14 @@ import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import com.chatapp.model.Message;
 import com.chatapp.model.Room;
 import com.chatapp.service.ChatService;
+import com.chatapp.service.TokenService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Component
@@ -29,29 +37,64 @@ public class ChatWebSocketHandler extends TextWebSocketHandler implements WebSoc
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final ChatService chatService;
+    private final TokenService tokenService;
 
-    // username -> sessions (supports multiple tabs)
-    private final Map<String, Set<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
+    // username -> sessions (supports multiple tabs); each session wrapped with its own outbound queue
+    private final Map<String, Set<ConcurrentWebSocketSessionDecorator>> userSessions = new ConcurrentHashMap<>();
 
-    public ChatWebSocketHandler(ChatService chatService) {
+    // session id -> id of the last chat message delivered to it (its resume position)
+    private final Map<String, String> positions = new ConcurrentHashMap<>();
+
+    // connects/disconnects only mark presence dirty; flushPresence sends one snapshot per tick
+    private final AtomicBoolean presenceDirty = new AtomicBoolean();
+
+    private volatile boolean draining;
+    private volatile String lastSavedId;
+
+    @Value("${app.ws.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${app.ws.send-buffer-limit-bytes:524288}")
+    private int sendBufferLimit;
+
+    @Value("${app.drain.reconnect-spread-ms:10000}")
+    private long reconnectSpreadMs;
+
+    public ChatWebSocketHandler(ChatService chatService, TokenService tokenService) {
         this.chatService = chatService;
+        this.tokenService = tokenService;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(this, "/chat")
+                .addInterceptors(new DrainHandshakeInterceptor(this::isDraining),
+                                 new TokenHandshakeInterceptor(tokenService))
                 .setAllowedOrigins("http://localhost:3000");
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        String username = extractQueryParam(session.getUri(), "username");
-        if (username != null && !username.isBlank()) {
-            session.getAttributes().put("username", username);
-            userSessions.computeIfAbsent(username, k -> new CopyOnWriteArraySet<>()).add(session);
-        }
-        broadcastPresence();
+        // set by TokenHandshakeInterceptor from the verified token
+        Object username = session.getAttributes().get("username");
+        if (username == null) return;
+
+        ConcurrentWebSocketSessionDecorator out =
+                new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, sendBufferLimit);
+        userSessions.computeIfAbsent(username.toString(), k -> new CopyOnWriteArraySet<>()).add(out);
+        presenceDirty.set(true);
 
+        // resumed after a drain: deliver what was missed instead of the client refetching history.
+        // registered first so nothing falls in the gap; the client drops ids it already has.
+        Object resumeFrom = session.getAttributes().remove(TokenHandshakeInterceptor.RESUME_FROM);
+        if (resumeFrom != null) {
+            List<Message> missed = chatService.missedSince(username.toString(), resumeFrom.toString());
+            for (Message m : missed) {
+                out.sendMessage(new TextMessage(mapper.writeValueAsString(m)));
+            }
+            String position = missed.isEmpty() ? resumeFrom.toString() : missed.get(missed.size() - 1).getId();
+            positions.putIfAbsent(session.getId(), position);
+        }
     }
 
     @Override
@@ -59,22 +102,26 @@ public class ChatWebSocketHandler extends TextWebSocketHandler implements WebSoc
         Object u = session.getAttributes().get("username");
         if (u != null) {
             String username = u.toString();
-            Set<WebSocketSession> set = userSessions.get(username);
+            Set<ConcurrentWebSocketSessionDecorator> set = userSessions.get(username);
             if (set != null) {
-                set.remove(session);
+                set.removeIf(s -> s.getId().equals(session.getId()));
                 if (set.isEmpty()) userSessions.remove(username);
             }
         }
-        broadcastPresence();
-
+        positions.remove(session.getId());
+        presenceDirty.set(true);
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         Message msg = mapper.readValue(message.getPayload(), Message.class);
+        // sender is whoever owns the token, not whatever the client claims
+        msg.setSender((String) session.getAttributes().get("username"));
+        msg.setId(null);
 
         // Save message in DB
         chatService.save(msg);
+        lastSavedId = msg.getId();
 
         // ✅ If roomId exists -> group routing
         if (msg.getRoomId() != null && !msg.getRoomId().isBlank()) {
@@ -85,7 +132,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler implements WebSoc
             String payload = mapper.writeValueAsString(msg);
 
             for (String member : room.getMembers()) {
-                sendToUser(member, payload);
+                sendToUser(member, payload, msg.getId());
             }
             return;
         }
@@ -97,43 +144,118 @@ public class ChatWebSocketHandler extends TextWebSocketHandler implements WebSoc
         if ("ALL".equalsIgnoreCase(receiver)) {
             // broadcast to all online users
             for (String user : userSessions.keySet()) {
-                sendToUser(user, payload);
+                sendToUser(user, payload, msg.getId());
             }
             return;
         }
 
         // private
-        sendToUser(receiver, payload);         // to receiver
-        sendToUser(msg.getSender(), payload);  // echo back to sender
+        sendToUser(receiver, payload, msg.getId());         // to receiver
+        sendToUser(msg.getSender(), payload, msg.getId());  // echo back to sender
     }
 
-    private void sendToUser(String username, String payload) throws Exception {
-        Set<WebSocketSession> sessions = userSessions.get(username);
+    private void sendToUser(String username, String payload, String position) throws Exception {
+        Set<ConcurrentWebSocketSessionDecorator> sessions = userSessions.get(username);
         if (sessions == null) return;
-        for (WebSocketSession s : sessions) {
-            if (s.isOpen()) s.sendMessage(new TextMessage(payload));
+        for (ConcurrentWebSocketSessionDecorator s : sessions) {
+            if (send(s, new TextMessage(payload))) positions.put(s.getId(), position);
         }
     }
+
+    /**
+     * Queues a message on one session. A recipient that cannot keep up (send
+     * time or buffer limit exceeded) is closed and dropped instead of failing
+     * the sender's fan-out; it reconnects and refetches.
+     */
+    private boolean send(ConcurrentWebSocketSessionDecorator s, TextMessage message) {
+        if (!s.isOpen()) return false;
+        try {
+            s.sendMessage(message);
+            return true;
+        } catch (SessionLimitExceededException ex) {
+            try {
+                s.close(ex.getStatus());
+            } catch (IOException closeEx) {
+                // already gone; afterConnectionClosed cleans up
+            }
+            return false;
+        } catch (IOException ex) {
+            // broken transport on this session only; afterConnectionClosed cleans up
+            return false;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.ws.presence-flush-ms:250}")
+    public void flushPresence() throws Exception {
+        if (draining || !presenceDirty.getAndSet(false)) return;
+        broadcastPresence();
+    }
+
     private void broadcastPresence() throws Exception {
         Map<String, Object> payload = new HashMap<>();
         payload.put("type", "PRESENCE");
         payload.put("online", new ArrayList<>(userSessions.keySet())); // usernames online now
         String json = mapper.writeValueAsString(payload);
 
-        for (Set<WebSocketSession> set : userSessions.values()) {
+        for (Set<ConcurrentWebSocketSessionDecorator> set : userSessions.values()) {
+            for (ConcurrentWebSocketSessionDecorator s : set) {
+                send(s, new TextMessage(json));
+            }
+        }
+    }
+
+    // ---------- drain (rolling deploys) ----------
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Stops new connections, tells every client to reconnect after a random
+     * delay with a resume token, waits up to {@code flushTimeoutMs} for the
+     * outbound queues to empty and then closes all sessions.
+     */
+    public void drain(long flushTimeoutMs) throws Exception {
+        draining = true;
+
+        for (Map.Entry<String, Set<ConcurrentWebSocketSessionDecorator>> e : userSessions.entrySet()) {
+            for (ConcurrentWebSocketSessionDecorator s : e.getValue()) {
+                String position = positions.getOrDefault(s.getId(), lastSavedId);
+
+                Map<String, Object> hint = new HashMap<>();
+                hint.put("type", "RECONNECT");
+                hint.put("delayMs", ThreadLocalRandom.current().nextLong(reconnectSpreadMs + 1));
+                hint.put("resume", tokenService.issueResume(e.getKey(), position));
+                try {
+                    if (s.isOpen()) s.sendMessage(new TextMessage(mapper.writeValueAsString(hint)));
+                } catch (Exception ex) {
+                    // session is already broken; it will reconnect without a hint
+                }
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + flushTimeoutMs;
+        while (hasPendingSends() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        for (Set<ConcurrentWebSocketSessionDecorator> set : userSessions.values()) {
             for (WebSocketSession s : set) {
-                if (s.isOpen()) s.sendMessage(new TextMessage(json));
+                try {
+                    s.close(CloseStatus.SERVICE_RESTARTED);
+                } catch (Exception ex) {
+                    // closing anyway
+                }
             }
         }
     }
 
-    private String extractQueryParam(URI uri, String key) {
-        if (uri == null || uri.getQuery() == null) return null;
-        String[] pairs = uri.getQuery().split("&");
-        for (String p : pairs) {
-            String[] kv = p.split("=", 2);
-            if (kv.length == 2 && kv[0].equals(key)) return kv[1];
+    private boolean hasPendingSends() {
+        for (Set<ConcurrentWebSocketSessionDecorator> set : userSessions.values()) {
+            for (ConcurrentWebSocketSessionDecorator s : set) {
+                if (s.isOpen() && (s.getBufferSize() > 0 || s.getTimeSinceSendStarted() > 0)) return true;
+            }
         }
-        return null;
+        return false;
     }
 }
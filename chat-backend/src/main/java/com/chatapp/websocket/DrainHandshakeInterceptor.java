@@ -0,0 +1,36 @@
+package com.chatapp.websocket;
+
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+/**
+ * Refuses new /chat connections while this node drains, so clients land on
+ * the next node instead.
+ */
+public class DrainHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final BooleanSupplier draining;
+
+    public DrainHandshakeInterceptor(BooleanSupplier draining) {
+        this.draining = draining;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (!draining.getAsBoolean()) return true;
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        return false;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
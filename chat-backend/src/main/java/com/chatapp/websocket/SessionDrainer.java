@@ -0,0 +1,46 @@
+package com.chatapp.websocket;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drains WebSocket sessions on shutdown. Runs in the default lifecycle
+ * phase, i.e. before the web server's own graceful shutdown.
+ */
+@Component
+public class SessionDrainer implements SmartLifecycle {
+
+    private final ChatWebSocketHandler handler;
+    private volatile boolean running;
+
+    @Value("${app.drain.flush-timeout-ms:10000}")
+    private long flushTimeoutMs;
+
+    public SessionDrainer(ChatWebSocketHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            handler.drain(flushTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // shutting down regardless
+        } finally {
+            running = false;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
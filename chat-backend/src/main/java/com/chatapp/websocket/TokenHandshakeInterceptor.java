@@ -0,0 +1,59 @@
+package com.chatapp.websocket;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.chatapp.service.TokenService;
+
+/**
+ * Verifies the session token on the /chat handshake. Browsers cannot set
+ * headers on a WebSocket, so the token comes as the "token" query param.
+ * An optional "resume" param (handed out when a node drains) carries the
+ * client's delivery position over to this connection.
+ */
+public class TokenHandshakeInterceptor implements HandshakeInterceptor {
+
+    static final String RESUME_FROM = "resumeFrom";
+
+    private final TokenService tokenService;
+
+    public TokenHandshakeInterceptor(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build()
+                .getQueryParams();
+        String token = params.getFirst("token");
+
+        Optional<String> username = tokenService.verify(token);
+        if (username.isEmpty()) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        attributes.put("username", username.get());
+
+        // a resume token only counts for the user it was issued to
+        tokenService.verifyResume(params.getFirst("resume"))
+                .filter(jwt -> username.get().equals(jwt.getSubject()))
+                .map(jwt -> jwt.getClaimAsString(TokenService.POSITION_CLAIM))
+                .ifPresent(position -> attributes.put(RESUME_FROM, position));
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
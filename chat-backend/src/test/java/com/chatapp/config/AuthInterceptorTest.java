@@ -0,0 +1,77 @@
+package com.chatapp.config;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.chatapp.model.User;
+import com.chatapp.service.TokenService;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+class AuthInterceptorTest {
+
+    private final TokenService tokens =
+            new TokenService("0123456789abcdef0123456789abcdef", 60, 300, new MockEnvironment());
+    private final AuthInterceptor interceptor = new AuthInterceptor(tokens);
+
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+    }
+
+    @Test
+    void letsTheTokenOwnerThrough() throws Exception {
+        bearer(tokens.issue(new User("alice", "x")));
+        when(request.getParameter("me")).thenReturn("alice");
+
+        assertTrue(interceptor.preHandle(request, response, null));
+        verify(request).setAttribute("username", "alice");
+        verify(response, never()).sendError(anyInt(), anyString());
+    }
+
+    @Test
+    void rejectsMissingOrResumeTokensWith401() throws Exception {
+        assertFalse(interceptor.preHandle(request, response, null));
+
+        bearer(tokens.issueResume("alice", null));
+        assertFalse(interceptor.preHandle(request, response, null));
+
+        verify(response, times(2)).sendError(401, "Missing or invalid token");
+    }
+
+    @Test
+    void rejectsAnotherUsersParametersWith403() throws Exception {
+        bearer(tokens.issue(new User("alice", "x")));
+        when(request.getParameter("me")).thenReturn("bob");
+
+        assertFalse(interceptor.preHandle(request, response, null));
+        verify(response).sendError(403, "Token does not belong to this user");
+
+        when(request.getParameter("me")).thenReturn("alice");
+        when(request.getParameter("username")).thenReturn("bob");
+
+        assertFalse(interceptor.preHandle(request, response, null));
+        verify(request, never()).setAttribute("username", "alice");
+    }
+
+    private void bearer(String token) {
+        when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn("Bearer " + token);
+    }
+}
@@ -0,0 +1,78 @@
+package com.chatapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import com.chatapp.model.Message;
+import com.chatapp.repository.MessageRepository;
+import com.chatapp.repository.RoomRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/** Recent-history reads: which ones reach Mongo (the archive service) and which the ring answers. */
+class ChatServiceTest {
+
+    private static final int RING = 5;
+    private static final String KEY = RecentHistoryCache.directKey("alice", "bob");
+
+    private MessageArchiveService archive;
+    private RecentHistoryCache cache;
+    private ChatService chatService;
+
+    @BeforeEach
+    void setUp() {
+        archive = mock(MessageArchiveService.class);
+        cache = new RecentHistoryCache(new SimpleMeterRegistry(), RING, 10, Long.MAX_VALUE);
+        chatService = new ChatService(mock(MessageRepository.class), mock(RoomRepository.class), cache, archive);
+    }
+
+    @Test
+    void coldReadLoadsTheRingOnceThenServesFromIt() {
+        when(archive.page(eq(KEY), any(Criteria.class), isNull(), eq(RING))).thenReturn(messages(3, null));
+
+        assertEquals(2, chatService.recentConversation("alice", "bob", 2).size());
+        assertEquals(3, chatService.recentConversation("bob", "alice", 3).size());
+
+        verify(archive, times(1)).page(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void warmRingShortForMeGoesStraightToTheVisibleQuery() {
+        // everything deleted for alice ("delete chat"), still in the ring for bob
+        cache.load(KEY, cache.stamp(KEY), messages(RING, "alice"), false);
+        List<Message> visible = messages(1, null);
+        when(archive.page(eq(KEY), any(Criteria.class), isNull(), eq(2))).thenReturn(visible);
+
+        assertEquals(visible, chatService.recentConversation("alice", "bob", 2));
+
+        // no reload of the ring that is already there
+        verify(archive, never()).page(any(), any(), any(), eq(RING));
+        verify(archive, times(1)).page(any(), any(), any(), anyInt());
+    }
+
+    private static List<Message> messages(int n, String deletedFor) {
+        List<Message> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Message m = new Message(i % 2 == 0 ? "alice" : "bob", i % 2 == 0 ? "bob" : "alice", "hi");
+            m.setId("m" + i);
+            if (deletedFor != null) m.setDeletedFor(List.of(deletedFor));
+            list.add(m);
+        }
+        return list;
+    }
+}
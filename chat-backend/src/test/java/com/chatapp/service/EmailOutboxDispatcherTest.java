@@ -0,0 +1,198 @@
+package com.chatapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.chatapp.model.OutboxEmail;
+import com.chatapp.repository.OutboxEmailRepository;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+
+/**
+ * Runs the dispatcher against GreenMail as the SMTP stand-in; Mongo is
+ * mocked, with the claim returning what findAndModify would.
+ */
+class EmailOutboxDispatcherTest {
+
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long BACKOFF_MS = 30_000;
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private MongoTemplate mongo;
+    private OutboxEmailRepository outboxRepo;
+
+    @BeforeEach
+    void setUp() {
+        mongo = mock(MongoTemplate.class);
+        outboxRepo = mock(OutboxEmailRepository.class);
+    }
+
+    @Test
+    void sendsDueEmailAndRemovesIt() {
+        OutboxEmail email = claimed(1, null);
+
+        dispatcher(smtp(greenMail.getSmtp().getPort())).dispatch();
+
+        assertEquals(1, greenMail.getReceivedMessages().length);
+        verify(outboxRepo).deleteById(email.getId());
+        verify(outboxRepo, never()).save(any());
+    }
+
+    @Test
+    void schedulesRetryWithBackoffWhenSmtpIsDown() throws IOException {
+        OutboxEmail email = claimed(2, null);
+        long before = System.currentTimeMillis();
+
+        dispatcher(smtp(unusedPort())).dispatch();
+
+        verify(outboxRepo).save(email);
+        assertEquals(OutboxEmail.PENDING, email.getStatus());
+        assertEquals(2, email.getAttempts());
+        assertTrue(email.getNextAttemptAt() >= before + 2 * BACKOFF_MS);
+        assertNull(email.getDeadAt());
+        verify(outboxRepo, never()).deleteById(anyString());
+    }
+
+    @Test
+    void deadLettersAfterTheLastAttemptFails() throws IOException {
+        OutboxEmail email = claimed(MAX_ATTEMPTS, null);
+
+        dispatcher(smtp(unusedPort())).dispatch();
+
+        verify(outboxRepo).save(email);
+        assertEquals(OutboxEmail.DEAD, email.getStatus());
+        // starts the retention clock of the TTL index
+        assertNotNull(email.getDeadAt());
+    }
+
+    @Test
+    void deadLettersWhenTheLeaseRanOutOnEveryAttempt() {
+        // claimed once more than allowed: every earlier send died holding the lease
+        OutboxEmail email = claimed(MAX_ATTEMPTS + 1, null);
+
+        dispatcher(smtp(greenMail.getSmtp().getPort())).dispatch();
+
+        assertEquals(0, greenMail.getReceivedMessages().length);
+        assertEquals(OutboxEmail.DEAD, email.getStatus());
+    }
+
+    @Test
+    void deadLettersExpiredEmailWithoutSendingIt() {
+        OutboxEmail email = claimed(1, System.currentTimeMillis() - 1);
+
+        dispatcher(smtp(greenMail.getSmtp().getPort())).dispatch();
+
+        assertEquals(0, greenMail.getReceivedMessages().length);
+        assertEquals(OutboxEmail.DEAD, email.getStatus());
+    }
+
+    @Test
+    void deadLettersInsteadOfRetryingPastExpiry() throws IOException {
+        OutboxEmail email = claimed(1, System.currentTimeMillis() + BACKOFF_MS / 2);
+
+        dispatcher(smtp(unusedPort())).dispatch();
+
+        assertEquals(OutboxEmail.DEAD, email.getStatus());
+    }
+
+    @Test
+    void treatsCloseFailureAfterSendingAsDelivered() {
+        OutboxEmail email = claimed(1, null);
+        JavaMailSender sender = mock(JavaMailSender.class);
+        doThrow(new MailSendException("Failed to close server connection after message sending"))
+                .when(sender).send(any(SimpleMailMessage[].class));
+
+        dispatcher(sender).dispatch();
+
+        verify(outboxRepo).deleteById(email.getId());
+        verify(outboxRepo, never()).save(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void indexesTheClaimAndExpiresDeadRows() {
+        MongoCollection<Document> outbox = mock(MongoCollection.class);
+        when(mongo.getCollectionName(OutboxEmail.class)).thenReturn("email_outbox");
+        when(mongo.getCollection("email_outbox")).thenReturn(outbox);
+
+        dispatcher(mock(JavaMailSender.class)).ensureIndexes();
+
+        verify(outbox).createIndex(Indexes.ascending("status", "nextAttemptAt"));
+        verify(outbox).createIndex(Indexes.ascending("status", "lockedUntil"));
+        ArgumentCaptor<IndexOptions> ttl = ArgumentCaptor.forClass(IndexOptions.class);
+        verify(outbox).createIndex(eq(Indexes.ascending("deadAt")), ttl.capture());
+        assertEquals(30, ttl.getValue().getExpireAfter(TimeUnit.DAYS).longValue());
+    }
+
+    // what the claim's findAndModify returns: attempts already incremented
+    private OutboxEmail claimed(int attempts, Long expiresAt) {
+        OutboxEmail email = new OutboxEmail("user@chat.test", "Reset", "link");
+        email.setId("e1");
+        email.setStatus(OutboxEmail.SENDING);
+        email.setAttempts(attempts);
+        email.setExpiresAt(expiresAt);
+        when(mongo.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(OutboxEmail.class)))
+                .thenReturn(email, (OutboxEmail) null);
+        return email;
+    }
+
+    private EmailOutboxDispatcher dispatcher(JavaMailSender sender) {
+        EmailOutboxDispatcher dispatcher = new EmailOutboxDispatcher(mongo, outboxRepo, sender);
+        ReflectionTestUtils.setField(dispatcher, "from", "noreply@chat.test");
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 20);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", MAX_ATTEMPTS);
+        ReflectionTestUtils.setField(dispatcher, "backoffMs", BACKOFF_MS);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 3_600_000L);
+        ReflectionTestUtils.setField(dispatcher, "deadRetentionDays", 30L);
+        return dispatcher;
+    }
+
+    private static JavaMailSender smtp(int port) {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("localhost");
+        sender.setPort(port);
+        sender.getJavaMailProperties().put("mail.smtp.connectiontimeout", "2000");
+        sender.getJavaMailProperties().put("mail.smtp.timeout", "2000");
+        return sender;
+    }
+
+    private static int unusedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
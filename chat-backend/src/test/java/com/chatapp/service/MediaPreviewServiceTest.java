@@ -0,0 +1,160 @@
+package com.chatapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class MediaPreviewServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsOrientationFromExifInEitherByteOrder() throws IOException {
+        assertEquals(6, MediaPreviewService.exifOrientation(jpeg("big.jpg", 6, ByteOrder.BIG_ENDIAN)));
+        assertEquals(8, MediaPreviewService.exifOrientation(jpeg("little.jpg", 8, ByteOrder.LITTLE_ENDIAN)));
+    }
+
+    @Test
+    void missingOrNonJpegMetadataMeansUpright() throws IOException {
+        assertEquals(1, MediaPreviewService.exifOrientation(jpeg("plain.jpg", 0, ByteOrder.BIG_ENDIAN)));
+
+        Path png = dir.resolve("a.png");
+        ImageIO.write(halves(), "png", png.toFile());
+        assertEquals(1, MediaPreviewService.exifOrientation(png));
+
+        Path text = dir.resolve("a.txt");
+        Files.writeString(text, "not an image");
+        assertEquals(1, MediaPreviewService.exifOrientation(text));
+    }
+
+    @Test
+    void rotatesOrientationSixClockwise() throws IOException {
+        Path file = jpeg("rot6.jpg", 6, ByteOrder.BIG_ENDIAN);
+        BufferedImage decoded = ImageIO.read(file.toFile());
+
+        BufferedImage upright = MediaPreviewService.orient(decoded, MediaPreviewService.exifOrientation(file));
+
+        // 40x20 stored, left half red: upright it is 20x40 with red on top
+        assertEquals(20, upright.getWidth());
+        assertEquals(40, upright.getHeight());
+        assertTrue(isRed(upright.getRGB(10, 5)));
+        assertTrue(isBlue(upright.getRGB(10, 35)));
+    }
+
+    @Test
+    void rotatesOrientationEightCounterClockwise() {
+        BufferedImage upright = MediaPreviewService.orient(halves(), 8);
+
+        assertEquals(20, upright.getWidth());
+        assertEquals(40, upright.getHeight());
+        assertTrue(isBlue(upright.getRGB(10, 5)));
+        assertTrue(isRed(upright.getRGB(10, 35)));
+    }
+
+    @Test
+    void flipsAndTurnsWithoutChangingSize() {
+        BufferedImage mirrored = MediaPreviewService.orient(halves(), 2);
+        assertEquals(40, mirrored.getWidth());
+        assertTrue(isBlue(mirrored.getRGB(5, 10)));
+
+        BufferedImage upsideDown = MediaPreviewService.orient(halves(), 3);
+        assertTrue(isBlue(upsideDown.getRGB(5, 10)));
+        assertTrue(isRed(upsideDown.getRGB(35, 10)));
+    }
+
+    @Test
+    void leavesUprightImagesAlone() {
+        BufferedImage img = halves();
+        assertSame(img, MediaPreviewService.orient(img, 1));
+        assertSame(img, MediaPreviewService.orient(img, 0));
+    }
+
+    @Test
+    void leavesGifsToTheOriginal() throws IOException {
+        MediaPreviewService service = new MediaPreviewService(Runnable::run);
+        ReflectionTestUtils.setField(service, "maxPixels", 40_000_000L);
+
+        Path png = dir.resolve("a.png");
+        ImageIO.write(halves(), "png", png.toFile());
+        Path gif = dir.resolve("a.gif");
+        ImageIO.write(halves(), "gif", gif.toFile());
+
+        assertTrue(service.canPreview(png, "image/png"));
+        // possibly animated: a variant would only keep the first frame
+        assertFalse(service.canPreview(gif, "image/gif"));
+        assertFalse(service.canPreview(gif, "image/png"));
+    }
+
+    // 40x20, left half red, right half blue
+    private static BufferedImage halves() {
+        BufferedImage img = new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 20, 20);
+        g.setColor(Color.BLUE);
+        g.fillRect(20, 0, 20, 20);
+        g.dispose();
+        return img;
+    }
+
+    // JPEG of halves() with an EXIF APP1 segment carrying the orientation (0 = no EXIF)
+    private Path jpeg(String name, int orientation, ByteOrder order) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(halves(), "jpg", encoded);
+        byte[] jpeg = encoded.toByteArray();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2); // SOI
+        if (orientation != 0) {
+            ByteBuffer tiff = ByteBuffer.allocate(26).order(order);
+            tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+            tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+            tiff.putShort((short) 42).putInt(8);          // IFD0 right after the header
+            tiff.putShort((short) 1);                     // one entry
+            tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1);
+            tiff.putShort((short) orientation).putShort((short) 0);
+            tiff.putInt(0);                               // no next IFD
+
+            byte[] exif = "Exif\0\0".getBytes(StandardCharsets.ISO_8859_1);
+            int length = 2 + exif.length + tiff.capacity();
+            out.write(0xFF);
+            out.write(0xE1);
+            out.write(length >> 8);
+            out.write(length & 0xFF);
+            out.write(exif);
+            out.write(tiff.array());
+        }
+        out.write(jpeg, 2, jpeg.length - 2);
+
+        Path file = dir.resolve(name);
+        Files.write(file, out.toByteArray());
+        return file;
+    }
+
+    private static boolean isRed(int rgb) {
+        return ((rgb >> 16) & 0xFF) > 200 && (rgb & 0xFF) < 60;
+    }
+
+    private static boolean isBlue(int rgb) {
+        return (rgb & 0xFF) > 200 && ((rgb >> 16) & 0xFF) < 60;
+    }
+}
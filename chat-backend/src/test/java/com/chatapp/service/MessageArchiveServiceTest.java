@@ -0,0 +1,178 @@
+package com.chatapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.chatapp.model.Message;
+import com.mongodb.MongoClientSettings;
+
+/**
+ * History reads across the hot collection and the monthly partitions; Mongo
+ * is mocked, each collection answering with its messages newest first.
+ */
+class MessageArchiveServiceTest {
+
+    private static final String KEY = RecentHistoryCache.roomKey("r1");
+    private static final Criteria ROOM = Criteria.where("roomId").is("r1");
+
+    private static final String JUN = MessageArchiveService.ARCHIVE_PREFIX + "2026_06";
+    private static final String JUL = MessageArchiveService.ARCHIVE_PREFIX + "2026_07";
+    private static final String AUG = MessageArchiveService.ARCHIVE_PREFIX + "2026_08";
+    private static final String SEP = MessageArchiveService.ARCHIVE_PREFIX + "2026_09";
+
+    private final Message a1 = message("2026-07-03");
+    private final Message a2 = message("2026-07-20");
+    private final Message a3 = message("2026-08-05");
+    private final Message a4 = message("2026-08-25");
+    private final Message h1 = message("2026-10-01");
+    private final Message h2 = message("2026-10-02");
+
+    private MongoTemplate mongo;
+    private MessageArchiveService archive;
+
+    @BeforeEach
+    void setUp() {
+        mongo = mock(MongoTemplate.class);
+        archive = new MessageArchiveService(mongo);
+        stored(MessageArchiveService.HOT, h2, h1);
+        stored(JUL, a2, a1);
+        stored(AUG, a4, a3);
+        when(mongo.getCollectionNames()).thenReturn(Set.of("messages", "users", JUN, JUL, AUG, SEP));
+    }
+
+    @Test
+    void pageWithoutSpanStaysInTheHotTier() {
+        assertEquals(List.of(h1, h2), archive.page(KEY, ROOM, null, 5));
+
+        verify(mongo, never()).getCollectionNames();
+        verify(mongo, never()).find(any(Query.class), eq(Message.class), startsWith(MessageArchiveService.ARCHIVE_PREFIX));
+    }
+
+    @Test
+    void pageContinuesIntoTheSpannedPartitions() {
+        span(a1, a4);
+
+        assertEquals(List.of(a2, a3, a4, h1, h2), archive.page(KEY, ROOM, null, 5));
+
+        // outside the span: not read at all
+        verify(mongo, never()).find(any(Query.class), eq(Message.class), eq(JUN));
+        verify(mongo, never()).find(any(Query.class), eq(Message.class), eq(SEP));
+    }
+
+    @Test
+    void pageBeforeAnArchivedIdStartsInItsPartition() {
+        span(a1, a4);
+
+        assertEquals(List.of(a1, a2, a3), archive.page(KEY, ROOM, a4.getId(), 5));
+    }
+
+    @Test
+    void partitionListIsOnlyRefreshedWhenASpanReachesPastIt() {
+        when(mongo.getCollectionNames()).thenReturn(Set.of(JUL, AUG), Set.of(JUL, AUG, SEP));
+        span(a1, a4);
+
+        archive.page(KEY, ROOM, null, 10);
+        archive.page(KEY, ROOM, null, 10);
+        verify(mongo, times(1)).getCollectionNames();
+
+        // the archiver has since moved a September message of this room
+        Message a5 = message("2026-09-10");
+        stored(SEP, a5);
+        span(a1, a5);
+
+        assertEquals(List.of(a1, a2, a3, a4, a5, h1, h2), archive.page(KEY, ROOM, null, 10));
+        verify(mongo, times(2)).getCollectionNames();
+    }
+
+    @Test
+    void archiverOnlyDeletesMessagesNobodyChanged() {
+        ObjectId id = new ObjectId(a1.getId());
+
+        BsonDocument untouched = render(MessageArchiveService.unchanged(
+                new Document("_id", id).append("sender", "alice").append("content", "hi")));
+        assertEquals(BsonDocument.parse("{$and: [{_id: {$oid: '" + id + "'}}, {sender: 'alice'},"
+                + " {deletedFor: {$exists: false}}]}"), untouched);
+
+        BsonDocument hidden = render(MessageArchiveService.unchanged(
+                new Document("_id", id).append("sender", "alice").append("deletedFor", List.of("bob"))));
+        assertEquals(BsonDocument.parse("{$and: [{_id: {$oid: '" + id + "'}}, {sender: 'alice'},"
+                + " {deletedFor: ['bob']}]}"), hidden);
+    }
+
+    @Test
+    void renameSenderRekeysDirectSpans() {
+        Document span = new Document("_id", RecentHistoryCache.directKey("alice", "bob"))
+                .append("oldest", new ObjectId(a1.getId()))
+                .append("newest", new ObjectId(a4.getId()))
+                .append("users", List.of("alice", "bob"));
+        when(mongo.find(any(Query.class), eq(Document.class), eq(MessageArchiveService.SPANS))).thenReturn(List.of(span));
+
+        archive.renameSender("alice", "Deleted User");
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongo).upsert(query.capture(), update.capture(), eq(MessageArchiveService.SPANS));
+
+        assertEquals(RecentHistoryCache.directKey("bob", "Deleted User"), query.getValue().getQueryObject().get("_id"));
+        Document set = update.getValue().getUpdateObject();
+        assertEquals(new ObjectId(a1.getId()), set.get("$min", Document.class).get("oldest"));
+        assertEquals(new ObjectId(a4.getId()), set.get("$max", Document.class).get("newest"));
+        assertEquals(List.of("Deleted User", "bob"), set.get("$setOnInsert", Document.class).get("users"));
+    }
+
+    // what find() on the collection returns: newest first, older than the query's id bound, up to its limit
+    private void stored(String collection, Message... newestFirst) {
+        when(mongo.find(any(Query.class), eq(Message.class), eq(collection))).thenAnswer(inv -> {
+            Query q = inv.getArgument(0);
+            Document id = q.getQueryObject().get("id", Document.class);
+            ObjectId before = id == null ? null : id.getObjectId("$lt");
+            return Arrays.stream(newestFirst)
+                    .filter(m -> before == null || new ObjectId(m.getId()).compareTo(before) < 0)
+                    .limit(q.getLimit() > 0 ? q.getLimit() : Long.MAX_VALUE)
+                    .toList();
+        });
+    }
+
+    private void span(Message oldest, Message newest) {
+        when(mongo.findById(KEY, Document.class, MessageArchiveService.SPANS)).thenReturn(
+                new Document("_id", KEY)
+                        .append("oldest", new ObjectId(oldest.getId()))
+                        .append("newest", new ObjectId(newest.getId())));
+    }
+
+    private static Message message(String day) {
+        Message m = new Message("alice", null, "hi");
+        m.setRoomId("r1");
+        m.setId(new ObjectId(Date.from(Instant.parse(day + "T12:00:00Z"))).toHexString());
+        return m;
+    }
+
+    private static BsonDocument render(Bson filter) {
+        return filter.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+    }
+}
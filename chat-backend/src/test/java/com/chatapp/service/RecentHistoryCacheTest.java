@@ -0,0 +1,196 @@
+package com.chatapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.chatapp.model.Message;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RecentHistoryCacheTest {
+
+    private static final String KEY = RecentHistoryCache.directKey("alice", "bob");
+
+    private int nextId;
+
+    @Test
+    void servesAppendedMessagesOnceLoaded() {
+        RecentHistoryCache cache = cache(5, 10, Long.MAX_VALUE);
+        assertNull(cache.recent(KEY, "alice", 2));
+
+        cache.load(KEY, cache.stamp(KEY), messages(2), true);
+        cache.append(dm("alice", "bob"));
+
+        assertEquals(List.of("m0", "m1", "m2"), ids(cache.recent(KEY, "alice", 5)));
+        assertEquals(List.of("m1", "m2"), ids(cache.recent(KEY, "alice", 2)));
+    }
+
+    @Test
+    void overflowDropsOldestAndClearsComplete() {
+        RecentHistoryCache cache = cache(3, 10, Long.MAX_VALUE);
+        cache.load(KEY, cache.stamp(KEY), messages(2), true);
+        Message hidden = dm("bob", "alice");
+        hidden.setDeletedFor(List.of("alice"));
+        cache.append(hidden);
+
+        // complete ring: two visible messages are all alice has
+        assertEquals(List.of("m0", "m1"), ids(cache.recent(KEY, "alice", 3)));
+
+        cache.append(dm("alice", "bob"));
+        assertEquals(List.of("m1", "m2", "m3"), ids(cache.recent(KEY, "bob", 3)));
+        // m0 was dropped, so the ring no longer knows alice's third-newest message
+        assertNull(cache.recent(KEY, "alice", 3));
+    }
+
+    @Test
+    void shortRingIsOnlyAnAnswerWhenComplete() {
+        RecentHistoryCache cache = cache(5, 10, Long.MAX_VALUE);
+        String complete = RecentHistoryCache.roomKey("r1");
+        String partial = RecentHistoryCache.roomKey("r2");
+
+        cache.load(complete, cache.stamp(complete), messages(2), true);
+        cache.load(partial, cache.stamp(partial), messages(2), false);
+
+        assertEquals(2, cache.recent(complete, "alice", 5).size());
+        assertNull(cache.recent(partial, "alice", 5));
+        assertEquals(2, cache.recent(partial, "alice", 2).size());
+    }
+
+    @Test
+    void warmRingShortForMeIsStillWarm() {
+        RecentHistoryCache cache = cache(5, 10, Long.MAX_VALUE);
+        assertFalse(cache.isWarm(KEY));
+
+        List<Message> hidden = messages(5);
+        hidden.forEach(m -> m.setDeletedFor(List.of("alice")));
+        cache.load(KEY, cache.stamp(KEY), hidden, false);
+
+        // null for alice, but not because the ring is cold
+        assertNull(cache.recent(KEY, "alice", 2));
+        assertTrue(cache.isWarm(KEY));
+    }
+
+    @Test
+    void limitAboveRingSizeIsAMiss() {
+        RecentHistoryCache cache = cache(3, 10, Long.MAX_VALUE);
+        cache.load(KEY, cache.stamp(KEY), messages(2), true);
+
+        assertNull(cache.recent(KEY, "alice", 4));
+    }
+
+    @Test
+    void tailSkipsMessagesDeletedForMe() {
+        List<Message> oldestFirst = messages(4);
+        oldestFirst.get(3).setDeletedFor(List.of("alice"));
+        oldestFirst.get(1).setDeletedFor(List.of("alice"));
+
+        assertEquals(List.of("m0", "m2"), ids(RecentHistoryCache.tail(oldestFirst, "alice", 2, false)));
+        assertEquals(List.of("m2", "m3"), ids(RecentHistoryCache.tail(oldestFirst, "bob", 2, false)));
+        assertEquals(List.of("m0", "m1", "m2", "m3"), ids(RecentHistoryCache.tail(oldestFirst, null, 4, false)));
+
+        // only two visible to alice: fine for a complete list, not enough for a partial one
+        assertNull(RecentHistoryCache.tail(oldestFirst, "alice", 3, false));
+        assertEquals(List.of("m0", "m2"), ids(RecentHistoryCache.tail(oldestFirst, "alice", 3, true)));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverConversationCap() {
+        RecentHistoryCache cache = cache(5, 2, Long.MAX_VALUE);
+        String a = RecentHistoryCache.roomKey("a");
+        String b = RecentHistoryCache.roomKey("b");
+        String c = RecentHistoryCache.roomKey("c");
+
+        cache.load(a, cache.stamp(a), messages(1), true);
+        cache.load(b, cache.stamp(b), messages(1), true);
+        cache.recent(a, null, 1); // a is now more recently used than b
+        cache.load(c, cache.stamp(c), messages(1), true);
+
+        assertNotNull(cache.recent(a, null, 1));
+        assertNull(cache.recent(b, null, 1));
+        assertNotNull(cache.recent(c, null, 1));
+    }
+
+    @Test
+    void evictsOverByteCap() {
+        Message sample = dm("alice", "bob");
+        long oneRing = 2 * RecentHistoryCache.estimateSize(sample);
+        RecentHistoryCache cache = cache(5, 100, oneRing + oneRing / 2);
+        String a = RecentHistoryCache.roomKey("a");
+        String b = RecentHistoryCache.roomKey("b");
+
+        cache.load(a, cache.stamp(a), messages(2), true);
+        cache.load(b, cache.stamp(b), messages(2), true);
+
+        assertNull(cache.recent(a, null, 1));
+        assertNotNull(cache.recent(b, null, 1));
+    }
+
+    @Test
+    void dropsColdLoadThatRacedAWrite() {
+        RecentHistoryCache cache = cache(5, 10, Long.MAX_VALUE);
+        int stamp = cache.stamp(KEY);
+
+        // saved while the cold load was reading Mongo: the loaded page would be missing it
+        cache.append(dm("alice", "bob"));
+        cache.load(KEY, stamp, messages(2), true);
+        assertNull(cache.recent(KEY, "alice", 1));
+
+        cache.load(KEY, cache.stamp(KEY), messages(3), true);
+        assertEquals(3, cache.recent(KEY, "alice", 5).size());
+    }
+
+    @Test
+    void invalidateDropsRingAndPendingLoads() {
+        RecentHistoryCache cache = cache(5, 10, Long.MAX_VALUE);
+        cache.load(KEY, cache.stamp(KEY), messages(2), true);
+        int stamp = cache.stamp(KEY);
+
+        cache.invalidate(KEY);
+        assertNull(cache.recent(KEY, "alice", 1));
+
+        cache.load(KEY, stamp, messages(2), true);
+        assertNull(cache.recent(KEY, "alice", 1));
+    }
+
+    @Test
+    void keysMessagesByConversation() {
+        Message room = dm("alice", null);
+        room.setRoomId("r1");
+
+        assertEquals(RecentHistoryCache.roomKey("r1"), RecentHistoryCache.keyOf(room));
+        assertEquals(RecentHistoryCache.BROADCAST_KEY, RecentHistoryCache.keyOf(dm("alice", "ALL")));
+        assertEquals(KEY, RecentHistoryCache.keyOf(dm("bob", "alice")));
+        assertNull(RecentHistoryCache.keyOf(dm("alice", null)));
+    }
+
+    private static RecentHistoryCache cache(int ringSize, int maxConversations, long maxBytes) {
+        return new RecentHistoryCache(new SimpleMeterRegistry(), ringSize, maxConversations, maxBytes);
+    }
+
+    // oldest first, alternating senders
+    private List<Message> messages(int n) {
+        List<Message> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            list.add(i % 2 == 0 ? dm("alice", "bob") : dm("bob", "alice"));
+        }
+        return list;
+    }
+
+    private Message dm(String sender, String receiver) {
+        Message m = new Message(sender, receiver, "hi");
+        m.setId("m" + nextId++);
+        return m;
+    }
+
+    private static List<String> ids(List<Message> messages) {
+        return messages.stream().map(Message::getId).toList();
+    }
+}
@@ -0,0 +1,112 @@
+package com.chatapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+
+import com.chatapp.model.User;
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+
+class TokenServiceTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    private final TokenService tokens = tokens(SECRET, 60, 300);
+
+    @Test
+    void verifiesItsOwnSessionToken() {
+        assertEquals(Optional.of("alice"), tokens.verify(tokens.issue(user("alice"))));
+    }
+
+    @Test
+    void rejectsTokensSignedWithAnotherKey() {
+        String forged = tokens("another-secret-another-secret-xx", 60, 300).issue(user("alice"));
+
+        assertTrue(tokens.verify(forged).isEmpty());
+        assertTrue(tokens.verifyResume(tokens("another-secret-another-secret-xx", 60, 300)
+                .issueResume("alice", "p1")).isEmpty());
+    }
+
+    @Test
+    void rejectsTamperedClaims() {
+        String[] parts = tokens.issue(user("alice")).split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8)
+                .replace("\"alice\"", "\"admin\"");
+        String tampered = parts[0] + "."
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+                + "." + parts[2];
+
+        assertTrue(tokens.verify(tampered).isEmpty());
+        assertTrue(tokens.verify("not-a-jwt").isEmpty());
+        assertTrue(tokens.verify(null).isEmpty());
+    }
+
+    @Test
+    void rejectsExpiredTokens() {
+        // correctly signed, but expired further back than the decoder's clock-skew allowance
+        Instant issued = Instant.now().minus(Duration.ofHours(2));
+        JwtClaimsSet.Builder claims = JwtClaimsSet.builder()
+                .subject("alice")
+                .issuedAt(issued)
+                .expiresAt(issued.plus(Duration.ofHours(1)));
+
+        assertTrue(tokens.verify(signed(claims.build())).isEmpty());
+        assertTrue(tokens.verifyResume(signed(claims.claim("use", "resume").build())).isEmpty());
+    }
+
+    @Test
+    void sessionAndResumeTokensAreNotInterchangeable() {
+        String session = tokens.issue(user("alice"));
+        String resume = tokens.issueResume("alice", "p1");
+
+        assertTrue(tokens.verify(resume).isEmpty());
+        assertTrue(tokens.verifyResume(session).isEmpty());
+        assertEquals("p1", tokens.verifyResume(resume).orElseThrow().getClaimAsString(TokenService.POSITION_CLAIM));
+    }
+
+    @Test
+    void requiresASecretOutsideTheDevProfile() {
+        assertThrows(IllegalStateException.class, () -> new TokenService("", 60, 300, new MockEnvironment()));
+        assertThrows(IllegalStateException.class, () -> new TokenService("too-short", 60, 300, new MockEnvironment()));
+
+        MockEnvironment dev = new MockEnvironment();
+        dev.setActiveProfiles("dev");
+        TokenService throwaway = new TokenService("", 60, 300, dev);
+        assertEquals(Optional.of("alice"), throwaway.verify(throwaway.issue(user("alice"))));
+    }
+
+    private static TokenService tokens(String secret, long ttlMinutes, long resumeTtlSeconds) {
+        return new TokenService(secret, ttlMinutes, resumeTtlSeconds, new MockEnvironment());
+    }
+
+    private static String signed(JwtClaimsSet claims) {
+        SecretKey key = new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        JwsHeader header = JwsHeader.with(MacAlgorithm.HS256).build();
+        return new NimbusJwtEncoder(new ImmutableSecret<>(key))
+                .encode(JwtEncoderParameters.from(header, claims))
+                .getTokenValue();
+    }
+
+    private static User user(String username) {
+        User u = new User();
+        u.setUsername(username);
+        return u;
+    }
+}
@@ -0,0 +1,62 @@
+package com.chatapp.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.chatapp.model.User;
+import com.chatapp.service.TokenService;
+
+class TokenHandshakeInterceptorTest {
+
+    private final TokenService tokens =
+            new TokenService("0123456789abcdef0123456789abcdef", 60, 300, new MockEnvironment());
+    private final TokenHandshakeInterceptor interceptor = new TokenHandshakeInterceptor(tokens);
+
+    private final ServerHttpResponse response = mock(ServerHttpResponse.class);
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    @Test
+    void carriesTheResumePositionOverForItsOwnUser() {
+        assertTrue(handshake(tokens.issue(new User("alice", "x")), tokens.issueResume("alice", "p1")));
+
+        assertEquals("alice", attributes.get("username"));
+        assertEquals("p1", attributes.get(TokenHandshakeInterceptor.RESUME_FROM));
+    }
+
+    @Test
+    void ignoresAResumeTokenIssuedToSomeoneElse() {
+        assertTrue(handshake(tokens.issue(new User("alice", "x")), tokens.issueResume("bob", "p1")));
+
+        assertEquals("alice", attributes.get("username"));
+        assertFalse(attributes.containsKey(TokenHandshakeInterceptor.RESUME_FROM));
+    }
+
+    @Test
+    void refusesAResumeTokenAsTheSessionToken() {
+        assertFalse(handshake(tokens.issueResume("alice", "p1"), null));
+
+        verify(response).setStatusCode(HttpStatus.UNAUTHORIZED);
+        assertTrue(attributes.isEmpty());
+    }
+
+    private boolean handshake(String token, String resume) {
+        String uri = "ws://localhost/chat?token=" + token + (resume == null ? "" : "&resume=" + resume);
+        ServerHttpRequest request = mock(ServerHttpRequest.class);
+        when(request.getURI()).thenReturn(URI.create(uri));
+        return interceptor.beforeHandshake(request, response, null, attributes);
+    }
+}
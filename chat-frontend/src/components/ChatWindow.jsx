@@ -2,6 +2,19 @@ import { useEffect, useMemo, useRef, useState } from "react";
 import UserList from "./UserList";
 const API = process.env.REACT_APP_API_BASE || "http://localhost:8080";
 const WS_BASE = API.replace("https://", "wss://").replace("http://", "ws://");
+const PAGE_SIZE = 50;
+
+// a 401 means the session token is no longer valid (expired, or the server's key changed): log in again
+let sessionExpired = false;
+const authFetch = (url, options) =>
+  fetch(url, options).then((res) => {
+    if (res.status === 401 && !sessionExpired) {
+      sessionExpired = true;
+      alert("Your session has expired. Please log in again.");
+      window.location.reload(); // forces logout
+    }
+    return res;
+  });
 
 
 export default function ChatWindow({ user }) {
@@ -15,6 +28,10 @@ export default function ChatWindow({ user }) {
   const [active, setActive] = useState({ type: "ALL" });
   const [text, setText] = useState("");
   const [convos, setConvos] = useState({});
+  const [hasOlder, setHasOlder] = useState({});
+  const [loadingOlder, setLoadingOlder] = useState({});
+  // conversations with an older page in flight (a ref, so a double click sees it before re-render)
+  const olderInFlight = useRef(new Set());
   
 
   const activeKey = useMemo(() => {
@@ -25,9 +42,12 @@ export default function ChatWindow({ user }) {
 
   const messages = convos[activeKey] || [];
 
+  // session token from /api/login
+  const authHeaders = useMemo(() => ({ Authorization: `Bearer ${user.token}` }), [user.token]);
+
   // ---------- helpers ----------
   const refreshRooms = () => {
-    fetch(`${API}/api/rooms?me=${encodeURIComponent(user.username)}`)
+    authFetch(`${API}/api/rooms?me=${encodeURIComponent(user.username)}`, { headers: authHeaders })
       .then((r) => r.json())
       .then((list) => setRooms(Array.isArray(list) ? list : []))
       .catch(() => setRooms([]));
@@ -49,9 +69,9 @@ export default function ChatWindow({ user }) {
 
     if (!members.includes(user.username)) members.push(user.username);
 
-    const res = await fetch(`${API}/api/rooms`, {
+    const res = await authFetch(`${API}/api/rooms`, {
       method: "POST",
-      headers: { "Content-Type": "application/json" },
+      headers: { ...authHeaders, "Content-Type": "application/json" },
       body: JSON.stringify({ name, members }),
     });
 
@@ -68,7 +88,7 @@ export default function ChatWindow({ user }) {
 
   // ---------- load initial data ----------
   useEffect(() => {
-    fetch(`${API}/api/users`)
+    authFetch(`${API}/api/users`, { headers: authHeaders })
       .then((r) => r.json())
       .then((list) => {
         const arr = Array.isArray(list) ? list : [];
@@ -82,44 +102,97 @@ export default function ChatWindow({ user }) {
 
   // ---------- connect websocket ----------
   useEffect(() => {
-    ws.current = new WebSocket(`${WS_BASE}/chat?username=${encodeURIComponent(user.username)}`);
-
-
-    ws.current.onmessage = (event) => {
-      const data = JSON.parse(event.data);
-
-      if (data.type === "PRESENCE") {
-        const online = (data.online || []).filter((u) => u !== user.username);
-        setOnlineUsers(online);
-        return;
-      }
-
-      const msg = data;
-
-      let key = "ALL";
-      if (msg.roomId) key = `ROOM__${msg.roomId}`;
-      else if (msg.receiver && msg.receiver !== "ALL") {
-        key = ["DM", ...[msg.sender, msg.receiver].sort()].join("__");
-      }
-
-      setConvos((prev) => {
-        const arr = prev[key] ? [...prev[key]] : [];
-        arr.push(msg);
-        return { ...prev, [key]: arr };
-      });
+    let stopped = false;
+    let resume = null;          // kept until a socket actually opens
+    let reconnectDelay = null;  // from a RECONNECT hint
+    let reconnecting = false;
+    let retries = 0;
+    let reconnectTimer = null;
+
+    const connect = () => {
+      let url = `${WS_BASE}/chat?token=${encodeURIComponent(user.token)}`;
+      if (resume) url += `&resume=${encodeURIComponent(resume)}`;
+
+      const socket = new WebSocket(url);
+      ws.current = socket;
+
+      socket.onopen = () => {
+        resume = null;
+        reconnecting = false;
+        retries = 0;
+      };
+
+      socket.onmessage = (event) => {
+        const data = JSON.parse(event.data);
+
+        if (data.type === "PRESENCE") {
+          const online = (data.online || []).filter((u) => u !== user.username);
+          setOnlineUsers(online);
+          return;
+        }
+
+        // server is draining for a deploy: come back after the jittered delay,
+        // keeping the loaded history (the resume token replays anything missed)
+        if (data.type === "RECONNECT") {
+          resume = data.resume;
+          reconnectDelay = data.delayMs || 0;
+          return;
+        }
+
+        const msg = data;
+
+        let key = "ALL";
+        if (msg.roomId) key = `ROOM__${msg.roomId}`;
+        else if (msg.receiver && msg.receiver !== "ALL") {
+          key = ["DM", ...[msg.sender, msg.receiver].sort()].join("__");
+        }
+
+        setConvos((prev) => {
+          const arr = prev[key] ? [...prev[key]] : [];
+          if (msg.id && arr.some((m) => m.id === msg.id)) return prev;
+          // a resume replay can arrive after newer live messages: keep id (= arrival) order
+          let at = arr.length;
+          if (msg.id) {
+            while (at > 0 && arr[at - 1].id && arr[at - 1].id > msg.id) at--;
+          }
+          arr.splice(at, 0, msg);
+          return { ...prev, [key]: arr };
+        });
+      };
+
+      socket.onerror = () => console.log("❌ WebSocket error");
+
+      socket.onclose = () => {
+        if (stopped) return;
+
+        let delay;
+        if (reconnectDelay !== null) {
+          delay = reconnectDelay;
+          reconnectDelay = null;
+          reconnecting = true;
+        } else if (reconnecting) {
+          // reconnect failed (old node still draining, next one not up yet): back off with jitter
+          const base = Math.min(30000, 1000 * 2 ** retries);
+          retries++;
+          delay = base / 2 + Math.random() * (base / 2);
+        } else {
+          return;
+        }
+        reconnectTimer = setTimeout(connect, delay);
+      };
     };
 
-    ws.current.onerror = () => console.log("❌ WebSocket error");
+    connect();
 
     return () => {
+      stopped = true;
+      clearTimeout(reconnectTimer);
       if (ws.current) ws.current.close();
     };
-  }, [user.username]);
+  }, [user.username, user.token]);
 
   // ---------- load history when active chat changes ----------
-  useEffect(() => {
-    if (convos[activeKey]) return;
-
+  const historyUrl = (before) => {
     let url = "";
     if (active.type === "ROOM") {
       url = `${API}/api/history?roomId=${encodeURIComponent(active.roomId)}`;
@@ -130,23 +203,56 @@ export default function ChatWindow({ user }) {
         `${API}/api/history?me=${encodeURIComponent(user.username)}` +
         `&with=${encodeURIComponent(active.with)}`;
     }
+    url += `&limit=${PAGE_SIZE}`;
+    if (before) url += `&before=${encodeURIComponent(before)}`;
+    return url;
+  };
 
-    fetch(url)
+  useEffect(() => {
+    if (convos[activeKey]) return;
+
+    authFetch(historyUrl(null), { headers: authHeaders })
       .then((r) => r.json())
       .then((history) => {
-        setConvos((prev) => ({
-          ...prev,
-          [activeKey]: Array.isArray(history) ? history : [],
-        }));
+        const page = Array.isArray(history) ? history : [];
+        setConvos((prev) => ({ ...prev, [activeKey]: page }));
+        setHasOlder((prev) => ({ ...prev, [activeKey]: page.length === PAGE_SIZE }));
       })
       .catch(() => setConvos((prev) => ({ ...prev, [activeKey]: [] })));
-  }, [activeKey, active, convos, user.username]);
+    // eslint-disable-next-line react-hooks/exhaustive-deps
+  }, [activeKey, active, convos, user.username, authHeaders]);
+
+  // older pages come from the same endpoint (hot messages first, then the archive)
+  const loadOlder = async () => {
+    const key = activeKey;
+    const oldest = messages[0];
+    if (!oldest?.id || olderInFlight.current.has(key)) return;
+
+    olderInFlight.current.add(key);
+    setLoadingOlder((prev) => ({ ...prev, [key]: true }));
+    try {
+      const res = await authFetch(historyUrl(oldest.id), { headers: authHeaders });
+      if (!res.ok) return;
+      const page = await res.json();
+      const older = Array.isArray(page) ? page : [];
+
+      setConvos((prev) => {
+        const current = prev[key] || [];
+        const seen = new Set(current.map((m) => m.id));
+        return { ...prev, [key]: [...older.filter((m) => !seen.has(m.id)), ...current] };
+      });
+      setHasOlder((prev) => ({ ...prev, [key]: older.length === PAGE_SIZE }));
+    } finally {
+      olderInFlight.current.delete(key);
+      setLoadingOlder((prev) => ({ ...prev, [key]: false }));
+    }
+  };
 
   const uploadAndSend = async (file) => {
     const fd = new FormData();
     fd.append("file", file);
 
-    const res = await fetch(`${API}/api/upload`, { method: "POST", body: fd });
+    const res = await authFetch(`${API}/api/upload`, { method: "POST", headers: authHeaders, body: fd });
 
     if (!res.ok) {
       const t = await res.text();
@@ -169,6 +275,8 @@ export default function ChatWindow({ user }) {
       fileName: meta.fileName,
       fileType: meta.fileType,
       fileSize: meta.fileSize,
+      thumbnailUrl: meta.thumbnailUrl,
+      previewUrl: meta.previewUrl,
     };
 
     if (active.type === "ROOM") payload.roomId = active.roomId;
@@ -182,9 +290,11 @@ export default function ChatWindow({ user }) {
   const isDMOnline = active.type === "DM" && onlineSet.has(active.with);
 
   const messagesEndRef = useRef(null);
+  // only follow new messages at the bottom, not older pages loaded on top
+  const lastMessageId = messages.length ? messages[messages.length - 1].id ?? messages.length : 0;
   useEffect(() => {
     messagesEndRef.current?.scrollIntoView({ behavior: "smooth" });
-  }, [messages.length, activeKey]);
+  }, [lastMessageId, activeKey]);
 
   // ---------- send message ----------
   const send = () => {
@@ -222,7 +332,7 @@ const deleteChat = async () => {
     return;
   }
 
-  const res = await fetch(url, { method: "POST" });
+  const res = await authFetch(url, { method: "POST", headers: authHeaders });
   if (!res.ok) {
     const t = await res.text();
     alert("Delete failed: " + t);
@@ -242,9 +352,9 @@ const deleteAccount = async () => {
   );
   if (!ok) return;
 
-  const res = await fetch(
+  const res = await authFetch(
     `${API}/api/user?username=${encodeURIComponent(user.username)}`,
-    { method: "DELETE" }
+    { method: "DELETE", headers: authHeaders }
   );
 
   if (!res.ok) {
@@ -448,6 +558,17 @@ const deleteAccount = async () => {
             {/* Messages */}
             <div className="flex-1 overflow-y-auto p-4 bg-gradient-to-b from-white/0 via-white/0 to-white/0">
               <div className="space-y-2">
+                {hasOlder[activeKey] && (
+                  <div className="flex justify-center">
+                    <button
+                      onClick={loadOlder}
+                      disabled={loadingOlder[activeKey]}
+                      className="text-xs px-3 py-1 rounded-full border border-white/10 text-white/70 hover:bg-white/5 transition disabled:opacity-50"
+                    >
+                      {loadingOlder[activeKey] ? "Loading…" : "Load earlier messages"}
+                    </button>
+                  </div>
+                )}
                 {messages.map((m, i) => {
                   const mine = m.sender === user.username;
 
@@ -469,11 +590,15 @@ const deleteAccount = async () => {
                           {/* Attachments */}
                           {(m.type === "IMAGE" || (m.fileType || "").startsWith("image/")) && m.fileUrl ? (
                             <div className="space-y-1">
-                              <img
-                                src={m.fileUrl}
-                                alt={m.fileName || "image"}
-                                className="rounded-xl max-w-[260px] border border-white/15"
-                              />
+                              {/* timeline shows the thumbnail; clicking opens the original */}
+                              <a href={m.fileUrl} target="_blank" rel="noreferrer">
+                                <img
+                                  src={m.thumbnailUrl || m.fileUrl}
+                                  alt={m.fileName || "image"}
+                                  loading="lazy"
+                                  className="rounded-xl max-w-[260px] border border-white/15"
+                                />
+                              </a>
                               <div className={mine ? "text-xs text-white/80" : "text-xs text-white/60"}>
                                 {m.fileName}
                               </div>